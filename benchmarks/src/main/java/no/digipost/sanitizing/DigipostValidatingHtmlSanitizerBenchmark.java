@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing;
+
+import no.digipost.sanitizing.benchmark.Corpus;
+import no.digipost.sanitizing.exception.ValidationException;
+import no.digipost.sanitizing.internal.PolicyFactoryProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.owasp.html.PolicyFactory;
+
+import java.time.Instant;
+
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DigipostValidatingHtmlSanitizerBenchmark {
+
+    public enum Policy {
+        V1_VALIDATE_ONLY_HTML_POLICY(PolicyFactoryProvider.V2_IN_EFFECT.minusSeconds(1)),
+        V2_VALIDATE_HTML_AND_CSS_POLICY(PolicyFactoryProvider.V2_IN_EFFECT);
+
+        final PolicyFactory factory;
+
+        Policy(Instant documentCreationDate) {
+            this.factory = PolicyFactoryProvider.getPolicyFactory(documentCreationDate);
+        }
+    }
+
+    @Param
+    Corpus document;
+
+    @Param
+    Policy policy;
+
+    private final DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer();
+    private String html;
+
+    @Setup
+    public void setUp() {
+        html = document.html();
+    }
+
+    /**
+     * Rejected documents are part of the measurement, so the exception is returned rather than thrown.
+     */
+    @Benchmark
+    public Object sanitize() {
+        try {
+            return sanitizer.sanitize(html, policy.factory);
+        } catch (ValidationException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks twice: once for throughput (ops/s) and once sampling the time of each operation,
+ * which gives the latency percentiles (p99 etc). Both runs use the GC profiler, which reports bytes allocated
+ * per operation as {@code gc.alloc.rate.norm}.
+ * <p>
+ * Results are written as JSON to {@code jmh-throughput.json} and {@code jmh-latency.json}, so they can be compared
+ * between releases, e.g. with <a href="https://jmh.morethan.io">JMH Visualizer</a>.
+ * <p>
+ * Usage: {@code java -jar target/benchmarks.jar [regexp for benchmarks to include]}
+ */
+public final class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "no\\.digipost\\.sanitizing\\..*";
+
+        new Runner(options(include)
+            .mode(Mode.Throughput)
+            .timeUnit(TimeUnit.SECONDS)
+            .result("jmh-throughput.json")
+            .build()).run();
+
+        new Runner(options(include)
+            .mode(Mode.SampleTime)
+            .timeUnit(TimeUnit.MICROSECONDS)
+            .result("jmh-latency.json")
+            .build()).run();
+    }
+
+    private static ChainedOptionsBuilder options(String include) {
+        return new OptionsBuilder()
+            .include(include)
+            .addProfiler(GCProfiler.class)
+            .resultFormat(ResultFormatType.JSON);
+    }
+
+    private BenchmarkRunner() {}
+}
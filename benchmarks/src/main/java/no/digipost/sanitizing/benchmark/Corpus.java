@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Documents used by the benchmarks. The small documents are the ones from the test resources of the
+ * validator, the large ones are generated from the same building blocks so they look like real letters,
+ * just more of them.
+ */
+public enum Corpus {
+
+    /**
+     * Letter made by the Digipost editor, with one inlined 10k image.
+     */
+    EDITOR_LETTER {
+        @Override
+        String generate() {
+            return editorLetter("");
+        }
+    },
+
+    /**
+     * The browser test bed input. Small document which is changed by the sanitizer (comment and link target).
+     */
+    TEST_INPUT {
+        @Override
+        String generate() {
+            return resource("testInput.html");
+        }
+    },
+
+    /**
+     * The editor letter with an event handler and a script added at the end of the body, like spam and attack traffic.
+     */
+    HOSTILE_LETTER {
+        @Override
+        String generate() {
+            return editorLetter("<p onmouseover=\"alert(document.cookie)\">Vinn en iPhone!</p>\n<script>alert(document.cookie)</script>\n");
+        }
+    },
+
+    /**
+     * Roughly 1 MB letter with a big stylesheet, many paragraphs and tables, and a handful of inlined images.
+     */
+    LARGE_LETTER {
+        @Override
+        String generate() {
+            StringBuilder body = new StringBuilder();
+            body.append("<style>\n").append(stylesheet(200)).append("</style>\n");
+            for (int section = 0; body.length() < 1_000_000; section++) {
+                body.append("<h2 class=\"section-").append(section).append("\">Seksjon ").append(section).append("</h2>\n");
+                for (int paragraph = 0; paragraph < 20; paragraph++) {
+                    body.append("<p class=\"digipost-abstract\">Lorem ipsum dolor sit amet, consectetur adipiscing elit. ")
+                        .append("Blåbærsyltetøy og rømmegrøt, nr. ").append(paragraph).append(".</p>\n");
+                }
+                body.append("<table border=\"0\" cellpadding=\"2\" width=\"100%\"><tbody>");
+                for (int row = 0; row < 20; row++) {
+                    body.append("<tr><td align=\"left\" valign=\"top\">Rad ").append(row)
+                        .append("</td><td bgcolor=\"#f0f0f0\" width=\"50%\">").append(row * 1000).append(",00 kr</td></tr>");
+                }
+                body.append("</tbody></table>\n");
+                if (section % 10 == 0) {
+                    body.append("<img src=\"data:image/gif;base64,").append(resource("base64_encoded_gif_10k.txt"))
+                        .append("\" alt=\"Bilde ").append(section).append("\">\n");
+                }
+            }
+            return editorLetter(body.toString());
+        }
+    };
+
+    private volatile String html;
+    private volatile byte[] bytes;
+
+    abstract String generate();
+
+    public String html() {
+        if (html == null) {
+            html = generate();
+        }
+        return html;
+    }
+
+    public byte[] bytes() {
+        if (bytes == null) {
+            bytes = html().getBytes(UTF_8);
+        }
+        return bytes;
+    }
+
+    /**
+     * @param rules number of rules in the stylesheet
+     * @return a stylesheet accepted by the style element validation, with the given number of rules
+     */
+    public static String stylesheet(int rules) {
+        StringBuilder css = new StringBuilder();
+        for (int i = 0; i < rules; i++) {
+            css.append(".module-").append(i).append(" table td, #letter div.text-").append(i).append(" {\n")
+                .append("\tfont-family: Arial, Helvetica, sans-serif;\n")
+                .append("\tfont-size: ").append(10 + i % 10).append("px;\n")
+                .append("\tmargin: ").append(i % 30).append("px 0px;\n")
+                .append("\tbackground-color: rgba(69,164,170,0.12);\n")
+                .append("\tdisplay: inline-block;\n")
+                .append("}\n");
+        }
+        return css.toString();
+    }
+
+    static String editorLetter(String body) {
+        return resource("example_html_from_editor.html")
+            .replace("{placeholderBody}", body)
+            .replace("{image}", resource("base64_encoded_gif_10k.txt"));
+    }
+
+    static String resource(String name) {
+        try (InputStream in = Corpus.class.getResourceAsStream("/no/digipost/sanitizing/internal/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing benchmark resource " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import no.digipost.sanitizing.benchmark.Corpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static no.digipost.sanitizing.internal.StyleElementPreprocessor.StyleElementReceiver.validateAndSanitizeCss;
+
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StyleElementPreprocessorBenchmark {
+
+    /**
+     * Number of rules in the generated stylesheet.
+     */
+    @Param({"1", "20", "500"})
+    int rules;
+
+    private String css;
+
+    @Setup
+    public void setUp() {
+        css = Corpus.stylesheet(rules);
+    }
+
+    @Benchmark
+    public String validateAndSanitize() {
+        return validateAndSanitizeCss(css);
+    }
+}
@@ -0,0 +1,47 @@
+#!/usr/bin/env bash
+#
+# Copyright (C) Posten Norge AS
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#         http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Compares the time to start, sanitize one small document and exit, for the native executable and on the JVM.
+# Build both first, from the root of the project:
+#
+#   mvn -Pnative package -DskipTests -pl digipost-html-validator
+#   mvn dependency:build-classpath -Dmdep.outputFile=target/classpath.txt -pl digipost-html-validator
+#
+# Usage: benchmarks/startup.sh [runs]
+
+set -euo pipefail
+cd "$(dirname "$0")/../digipost-html-validator"
+
+runs=${1:-20}
+html='<html><head><style>p { color: red; }</style></head><body><p>Hei <a href="https://www.digipost.no">Digipost</a></p></body></html>'
+classpath="target/classes:$(cat target/classpath.txt)"
+
+measure() {
+    local name=$1
+    shift
+    "$@" "$html" > /dev/null 2>&1
+    local start end
+    start=$(date +%s%N)
+    for ((i = 0; i < runs; i++)); do
+        "$@" "$html" > /dev/null 2>&1
+    done
+    end=$(date +%s%N)
+    echo "$name: $(( (end - start) / runs / 1000000 )) ms per run (mean of $runs)"
+}
+
+measure "jvm   " java -cp "$classpath" no.digipost.sanitizing.DigipostValidatingHtmlSanitizer
+measure "native" target/digipost-html-validator
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing;
+
+/**
+ * Snapshot of the statistics of one of the caches in this library.
+ */
+public final class CacheStats {
+
+    public final long hitCount;
+    public final long missCount;
+    public final long evictionCount;
+    public final int size;
+    public final long weight;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, int size, long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * @return ratio of lookups which were hits, or 1.0 if there have been no lookups
+     */
+    public double hitRate() {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ", size=" + size + ", weight=" + weight + "]";
+    }
+}
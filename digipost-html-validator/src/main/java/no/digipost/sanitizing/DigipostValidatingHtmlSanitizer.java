@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing;
+
+import no.digipost.sanitizing.exception.HTMLValidationException;
+import no.digipost.sanitizing.exception.ValidationException;
+import no.digipost.sanitizing.internal.ComparingAppendable;
+import no.digipost.sanitizing.internal.ErrorCollectingHtmlChangeListener;
+import no.digipost.sanitizing.internal.HostileHtmlScreen;
+import no.digipost.sanitizing.internal.PolicyFactoryProvider;
+import no.digipost.sanitizing.internal.PolicyRenderer;
+import no.digipost.sanitizing.internal.SanitizerBuffers;
+import no.digipost.sanitizing.internal.ValidationContext;
+import no.digipost.sanitizing.internal.ValidationSettings;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import no.digipost.sanitizing.metrics.ValidationPhase;
+import org.owasp.html.PolicyFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class DigipostValidatingHtmlSanitizer {
+
+    // https://github.com/OWASP/java-html-sanitizer/issues/103
+    private static final String DOCTYPE = "<!doctype html>";
+
+    private final int maxErrors;
+    private final ValidationSettings settings;
+
+    public DigipostValidatingHtmlSanitizer() {
+        this(Integer.MAX_VALUE, ValidationSettings.DEFAULTS);
+    }
+
+    private DigipostValidatingHtmlSanitizer(int maxErrors, ValidationSettings settings) {
+        this.maxErrors = maxErrors;
+        this.settings = settings;
+    }
+
+    /**
+     * @return a key which is equal to the key of another sanitizer if documents get the same results with both
+     */
+    Object resultKey() {
+        return Arrays.asList(maxErrors, settings.resultKey());
+    }
+
+    /**
+     * Stop the validation as soon as the given number of HTML policy violations are found, instead of parsing
+     * the rest of the document. The {@link HTMLValidationException} will then only contain the errors found so far.
+     * With {@code maxErrors = 1} a rejected document costs about as much as validating it up to its first error.
+     * <p>
+     * Note that CSS is validated one style-element at a time, and a {@link no.digipost.sanitizing.exception.CSSValidationException CSSValidationException}
+     * is always thrown after the first invalid style-element.
+     *
+     * @param maxErrors the number of errors to collect before stopping, at least 1
+     * @return a new sanitizer with the given error limit
+     */
+    public DigipostValidatingHtmlSanitizer withMaxErrors(int maxErrors) {
+        if (maxErrors < 1) {
+            throw new IllegalArgumentException("maxErrors must be at least 1, was " + maxErrors);
+        }
+        return new DigipostValidatingHtmlSanitizer(maxErrors, settings);
+    }
+
+    /**
+     * Limit the work spent matching attribute and css values against the policy, for each document. Every value
+     * costs one step per character (plus one), and all values are matched in linear time, so this is an upper bound
+     * on the cpu time one document can spend on its values. A document exceeding the limit is rejected with an
+     * {@link HTMLValidationException}. There is no limit by default.
+     *
+     * @param maxMatchSteps the number of steps for each document, at least 1
+     * @return a new sanitizer with the given limit
+     */
+    public DigipostValidatingHtmlSanitizer withMaxMatchSteps(long maxMatchSteps) {
+        return new DigipostValidatingHtmlSanitizer(maxErrors, settings.withMaxMatchSteps(maxMatchSteps));
+    }
+
+    /**
+     * Limit the size of images inlined as base64 data urls in {@code img src}, counted as decoded bytes. The images are
+     * counted while their base64 is validated, and the document is rejected with an {@link HTMLValidationException} as
+     * soon as an image goes over either limit, without validating the rest of the image or the document.
+     * There are no limits by default.
+     *
+     * @param maxImageBytes the size of each image, at least 1
+     * @param maxImageBytesPerDocument the size of all images in one document, at least 1
+     * @return a new sanitizer with the given limits
+     */
+    public DigipostValidatingHtmlSanitizer withMaxImageBytes(long maxImageBytes, long maxImageBytesPerDocument) {
+        return new DigipostValidatingHtmlSanitizer(maxErrors, settings.withMaxImageBytes(maxImageBytes, maxImageBytesPerDocument));
+    }
+
+    /**
+     * Require images inlined as base64 data urls in {@code img src} to start with the magic bytes of the declared
+     * media type, i.e. a png must start like a png. This is off by default, as some editors declare the wrong type.
+     *
+     * @return a new sanitizer which checks the magic bytes of images
+     */
+    public DigipostValidatingHtmlSanitizer withImageMagicBytesCheck() {
+        return new DigipostValidatingHtmlSanitizer(maxErrors, settings.withImageMagicBytesCheck(true));
+    }
+
+    /**
+     * Report how long sanitizing takes, how many style-elements and images the documents have, and which policy
+     * violations are found. See {@link ValidationMetrics} for what is reported. Nothing is measured by default.
+     *
+     * @return a new sanitizer reporting to the given metrics
+     */
+    public DigipostValidatingHtmlSanitizer withMetrics(ValidationMetrics metrics) {
+        return new DigipostValidatingHtmlSanitizer(maxErrors, settings.withMetrics(metrics));
+    }
+
+    /**
+     * Keep the output buffer, the error collector and other objects used to validate a document for each thread, and
+     * use them again for the next document validated on the same thread, instead of allocating new ones for every
+     * document. The output buffer is sized from the length of the document. This saves garbage when many documents are
+     * validated on a pool of threads, but not with e.g. a virtual thread per document, where each thread validates
+     * only one document. Buffers grown larger than about 2 MB by a huge document are not kept. Off by default.
+     *
+     * @return a new sanitizer which reuses its buffers for each thread
+     */
+    public DigipostValidatingHtmlSanitizer withReusableBuffers() {
+        return new DigipostValidatingHtmlSanitizer(maxErrors, settings.withReusableBuffers(true));
+    }
+
+    /**
+     * Before parsing a document, read it once looking for what the policy never accepts: {@code <script>},
+     * {@code <iframe>} and {@code <object>} tags, {@code on*} event handler attributes, {@code javascript:} links and
+     * images with {@code http(s):} sources. A document containing any of these is rejected right away with an
+     * {@link HTMLValidationException} with that one error, which costs a fraction of parsing the document.
+     * <p>
+     * Only our own policies, from {@link PolicyFactoryProvider}, are screened. The screen only finds what it is sure
+     * about, so documents it does not reject are validated as before, and it never rejects a valid document. But the
+     * error is the first one the screen finds, which may not be the first error in the document. Off by default.
+     *
+     * @return a new sanitizer which screens the documents before parsing them
+     */
+    public DigipostValidatingHtmlSanitizer withPreScreen() {
+        return new DigipostValidatingHtmlSanitizer(maxErrors, settings.withPreScreen(true));
+    }
+
+    /**
+     * @return a new sanitizer which neither uses nor fills the caches shared by all sanitizers, see {@link ValidationSettings#withSharedCaches(boolean)}
+     */
+    DigipostValidatingHtmlSanitizer withoutSharedCaches() {
+        return new DigipostValidatingHtmlSanitizer(maxErrors, settings.withSharedCaches(false));
+    }
+
+    ValidationMetrics metrics() {
+        return settings.metrics();
+    }
+
+    /**
+     * Reject style-element css containing any of the given words, in addition to the words rejected by default
+     * ({@code javascript}, {@code expression}, {@code url(}, {@code http://}, {@code https://}, {@code /*} and <code>*&#47;</code>).
+     * The words are matched ignoring case, and all words are searched for in one pass, so adding words does not make validation slower.
+     *
+     * @param words ascii words to reject
+     * @return a new sanitizer which also rejects the given words
+     */
+    public DigipostValidatingHtmlSanitizer withCssBlacklistedWords(String... words) {
+        return new DigipostValidatingHtmlSanitizer(maxErrors, settings.withCssBlacklistedWords(Arrays.asList(words)));
+    }
+
+    public static void main(String[] args) {
+        final String sanitize = new DigipostValidatingHtmlSanitizer()
+            .sanitize(args[0], PolicyFactoryProvider.getPolicyFactory());
+
+        System.out.println(sanitize);
+    }
+
+    /**
+     * Validate and sanitize HTML according to the given policy. Records all registered HTML changes and reports these as validations errors.
+     * <p>
+     * Note that it both validates (throws Exceptions) _and_ sanitizes (returns modified HTML), as there are some minor things that are not reported correctly from the validation framework (i.e. duplicate attributes).
+     * <p>
+     * We do validation in addition to sanitazion for legacy reasons (we originally did only validation) and because we want to avoid tampering with document contets.
+     */
+    public String sanitize(final String html, final PolicyFactory policy) throws ValidationException {
+        if (!settings.reuseBuffers()) {
+            StringBuilder sanitizedHtml = new StringBuilder(DOCTYPE.length() + html.length());
+            render(html, policy, PolicyFactoryProvider.errorCollector(maxErrors), sanitizedHtml);
+            return sanitizedHtml.toString();
+        }
+        try (SanitizerBuffers buffers = SanitizerBuffers.acquire()) {
+            StringBuilder sanitizedHtml = buffers.output(DOCTYPE.length() + html.length());
+            render(html, policy, buffers.errorCollector(maxErrors), sanitizedHtml);
+            return sanitizedHtml.toString();
+        }
+    }
+
+    /**
+     * Same as {@link #sanitize(String, PolicyFactory)}, but writes the sanitized html to {@code out} while it is
+     * rendered, instead of returning it as a String. {@code out} may be e.g. a {@link java.io.Writer Writer}, and is
+     * flushed if it is {@link java.io.Flushable Flushable}, but not closed.
+     * <p>
+     * Note that when a {@link ValidationException} is thrown, some or all of the sanitized html may already be
+     * written to {@code out}, and it must be discarded.
+     *
+     * @throws IOException if writing to {@code out} fails
+     */
+    public void sanitize(final String html, final PolicyFactory policy, final Appendable out) throws IOException, ValidationException {
+        try {
+            if (!settings.reuseBuffers()) {
+                render(html, policy, PolicyFactoryProvider.errorCollector(maxErrors), out);
+                return;
+            }
+            try (SanitizerBuffers buffers = SanitizerBuffers.acquire()) {
+                render(html, policy, buffers.errorCollector(maxErrors), out);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Same as {@link #sanitize(String, PolicyFactory, Appendable)}, writing the sanitized html to {@code out} as UTF-8.
+     * The stream is flushed, but not closed.
+     *
+     * @throws IOException if writing to {@code out} fails
+     */
+    public void sanitize(final String html, final PolicyFactory policy, final OutputStream out) throws IOException, ValidationException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        sanitize(html, policy, writer);
+        writer.flush();
+    }
+
+    /**
+     * Validate html according to the given policy, without rendering the sanitized html. Throws the same exceptions as
+     * {@link #sanitize(String, PolicyFactory)}, but instead of returning the sanitized html it only tells if sanitizing would change the html.
+     * <p>
+     * The sanitized output is compared with the input while it is rendered, and no comparing is done after the first difference.
+     * The whole document is still parsed, as validation errors may occur anywhere in it.
+     *
+     * @return true if the sanitized html would be exactly the same as the given html
+     */
+    public boolean isUnchangedBySanitizing(final String html, final PolicyFactory policy) throws ValidationException {
+        if (!settings.reuseBuffers()) {
+            ComparingAppendable comparison = new ComparingAppendable(html);
+            render(html, policy, PolicyFactoryProvider.errorCollector(maxErrors), comparison);
+            return comparison.isEqualToExpected();
+        }
+        try (SanitizerBuffers buffers = SanitizerBuffers.acquire()) {
+            ComparingAppendable comparison = buffers.comparison(html);
+            render(html, policy, buffers.errorCollector(maxErrors), comparison);
+            return comparison.isEqualToExpected();
+        }
+    }
+
+    private void render(final String html, final PolicyFactory policy, final ErrorCollectingHtmlChangeListener errorCollector, final Appendable out) throws ValidationException {
+        if (settings.preScreen()) {
+            HostileHtmlScreen.check(html, policy, settings.metrics());
+        }
+
+        try {
+            if (startsWithDoctype(html)) {
+                out.append(DOCTYPE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        //Will throw CSSValidationException if css is invalid (see StyleElementPreprocessor).
+        final ValidationMetrics metrics = settings.metrics();
+        final long start = metrics != ValidationMetrics.NO_OP ? System.nanoTime() : 0;
+        try (ValidationContext context = ValidationContext.open(settings)) {
+            try {
+                PolicyRenderer.render(html, policy, errorCollector, out);
+            } finally {
+                if (metrics != ValidationMetrics.NO_OP) {
+                    metrics.phase(ValidationPhase.SANITIZE, System.nanoTime() - start);
+                    metrics.sanitized(PolicyFactoryProvider.policyVersion(policy), context.styleElements(), context.images());
+                }
+            }
+        }
+
+        if (errorCollector.hasErrors()) {
+            throw HTMLValidationException.ofErrors(errorCollector.getErrors());
+        }
+    }
+
+    /**
+     * Same as {@code html.trim().toLowerCase().startsWith(DOCTYPE)}, without copying the html.
+     */
+    static boolean startsWithDoctype(final CharSequence html) {
+        int start = 0;
+        while (start < html.length() && html.charAt(start) <= ' ') {
+            start++;
+        }
+        if (html.length() - start < DOCTYPE.length()) {
+            return false;
+        }
+        for (int i = 0; i < DOCTYPE.length(); i++) {
+            if (Character.toLowerCase(html.charAt(start + i)) != DOCTYPE.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
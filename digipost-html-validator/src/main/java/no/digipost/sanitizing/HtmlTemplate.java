@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing;
+
+import no.digipost.sanitizing.internal.SlotText;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import no.digipost.sanitizing.metrics.ValidationPhase;
+import org.owasp.html.PolicyFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static no.digipost.sanitizing.HtmlValidationResult.HTML_EVERYTHING_OK;
+
+/**
+ * A template for documents which are the same except for some text, e.g. a mass mailing with the name and address of
+ * each recipient. Compile the template with {@link HtmlValidator#compileTemplate(String)}, with the text which
+ * varies marked as slots, like {@code <p>Hei {{navn}}!</p>}.
+ * <p>
+ * The template is validated once, when it is compiled. A document is then validated by checking that it is the
+ * template with some text in the slots, and that the text in each slot is only plain text, see {@link SlotText}.
+ * This costs a comparison of the bytes of the document with the template, instead of sanitizing the whole document.
+ * Documents which do not match the template, e.g. because the text in a slot contains markup, quotes or {@code &},
+ * are validated by the validator as any other document, so the result is always the same as from the validator.
+ * <p>
+ * A template is thread safe.
+ */
+public final class HtmlTemplate {
+
+    private static final Pattern SLOT_NAME = Pattern.compile("[\\p{L}\\p{N}_.-]+");
+
+    private final HtmlValidator validator;
+    private final PolicyFactory policy;
+    private final ValidationMetrics metrics;
+    private final List<String> slots;
+    private final byte[][] literals;
+
+    private HtmlTemplate(HtmlValidator validator, PolicyFactory policy, ValidationMetrics metrics, List<String> slots, List<String> literals) {
+        this.validator = validator;
+        this.policy = policy;
+        this.metrics = metrics;
+        this.slots = slots;
+        this.literals = new byte[literals.size()][];
+        for (int i = 0; i < this.literals.length; i++) {
+            this.literals[i] = literals.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    static HtmlTemplate compile(HtmlValidator validator, DigipostValidatingHtmlSanitizer sanitizer, PolicyFactory policy, String template) {
+        final List<String> slots = new ArrayList<>();
+        final List<String> literals = new ArrayList<>();
+        int from = 0;
+        for (int start; (start = template.indexOf("{{", from)) >= 0; ) {
+            final int end = template.indexOf("}}", start + 2);
+            if (end < 0) {
+                throw new IllegalArgumentException("The slot at index " + start + " is not closed with }}");
+            }
+            final String slot = template.substring(start + 2, end);
+            if (!SLOT_NAME.matcher(slot).matches()) {
+                throw new IllegalArgumentException("Invalid slot name '" + slot + "', use letters, digits, _, . and -");
+            } else if (start == from && !slots.isEmpty()) {
+                throw new IllegalArgumentException("The slots {{" + slots.get(slots.size() - 1) + "}} and {{" + slot + "}} must be separated by text or markup");
+            }
+            literals.add(template.substring(from, start));
+            slots.add(slot);
+            from = end + 2;
+        }
+        literals.add(template.substring(from));
+
+        // Letters in the slots. An entity reference without ; running into them would be changed by the sanitizer, so
+        // in a valid template the text before a slot never ends with one, and the text in a slot can not start one.
+        String prefix = "slot";
+        while (template.contains(prefix)) {
+            prefix += "x";
+        }
+        final List<String> markers = new ArrayList<>();
+        final StringBuilder html = new StringBuilder(literals.get(0));
+        for (int i = 0; i < slots.size(); i++) {
+            markers.add(prefix + i + prefix);
+            html.append(markers.get(i)).append(literals.get(i + 1));
+        }
+
+        if (!sanitizer.withMetrics(ValidationMetrics.NO_OP).isUnchangedBySanitizing(html.toString(), policy)) {
+            throw new IllegalArgumentException("The template is changed by sanitizing, use the sanitized html as template");
+        }
+        final List<String> notInText = SlotText.notInText(html.toString(), markers);
+        if (!notInText.isEmpty()) {
+            throw new IllegalArgumentException("The slot {{" + slots.get(markers.indexOf(notInText.get(0))) + "}} is not in plain text. "
+                + "Slots can not be in tags, attribute values, comments, or style and title elements");
+        }
+        return new HtmlTemplate(validator, policy, sanitizer.metrics(), slots, literals);
+    }
+
+    /**
+     * @return the names of the slots, in the order they are in the template
+     */
+    public List<String> slots() {
+        return slots;
+    }
+
+    /**
+     * Same as {@link HtmlValidator#valider(byte[])}, for a document which is expected to be made from this template.
+     */
+    public HtmlValidationResult valider(byte[] content) {
+        return matches(content) ? HTML_EVERYTHING_OK : validator.valider(content);
+    }
+
+    /**
+     * Same as {@link HtmlValidator#validerVerdikt(byte[])}, for a document which is expected to be made from this template.
+     */
+    public HtmlValidationResult validerVerdikt(byte[] content) {
+        return matches(content) ? HTML_EVERYTHING_OK : validator.validerVerdikt(content);
+    }
+
+    private boolean matches(byte[] content) {
+        if (validator.policy() != policy) {
+            return false;
+        }
+        if (metrics == ValidationMetrics.NO_OP) {
+            return matchesTemplate(content);
+        }
+        final long start = System.nanoTime();
+        final boolean matches = matchesTemplate(content);
+        metrics.phase(ValidationPhase.TEMPLATE_MATCH, System.nanoTime() - start);
+        if (matches) {
+            metrics.documentSize(content.length);
+        }
+        return matches;
+    }
+
+    private boolean matchesTemplate(byte[] content) {
+        if (!startsWith(content, 0, literals[0])) {
+            return false;
+        }
+        int position = literals[0].length;
+        for (int i = 1; i < literals.length; i++) {
+            final byte[] literal = literals[i];
+            final int slotEnd = i == literals.length - 1 ? content.length - literal.length : slotEnd(content, position, literal);
+            if (slotEnd < position || !startsWith(content, slotEnd, literal) || !SlotText.isAllowed(content, position, slotEnd)) {
+                return false;
+            }
+            position = slotEnd + literal.length;
+        }
+        return position == content.length;
+    }
+
+    /**
+     * @return where the first occurrence of the literal after a slot starting at {@code from} is, or -1 if it is not
+     *         found before a byte which can not be in a slot
+     */
+    private static int slotEnd(byte[] content, int from, byte[] literal) {
+        for (int i = from; i < content.length; i++) {
+            if (content[i] == literal[0] && startsWith(content, i, literal)) {
+                return i;
+            } else if (content[i] >= 0 && !SlotText.isAllowed((char) content[i])) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] content, int from, byte[] literal) {
+        if (content.length - from < literal.length) {
+            return false;
+        }
+        // Compared with vector instructions on Java 9 and newer
+        return ByteBuffer.wrap(content, from, literal.length).equals(ByteBuffer.wrap(literal));
+    }
+}
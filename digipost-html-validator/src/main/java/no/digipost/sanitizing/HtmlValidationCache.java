@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing;
+
+import no.digipost.sanitizing.internal.BoundedCache;
+import org.owasp.html.PolicyFactory;
+
+import java.util.Arrays;
+
+/**
+ * Cache of validation results, to be used by {@link HtmlValidator#withCache(HtmlValidationCache) HtmlValidator}
+ * when the same documents are validated over and over again, e.g. mass mailings of identical letters.
+ * <p>
+ * Results are cached by the content of the document, the policy used to validate it, and the settings of the validator
+ * which affect the result, like {@link DigipostValidatingHtmlSanitizer#withMaxErrors(int) the maximum number of errors}.
+ * The cache keeps a copy of every cached document, so a lookup only hits when the document is exactly the same, byte for byte.
+ * <p>
+ * The cache is bounded both by the number of documents and by their total size, and evicts the least recently used
+ * documents first. The size of an entry is the size of the document plus the size of the sanitized html, if any.
+ */
+public final class HtmlValidationCache {
+
+    private final BoundedCache<Key, HtmlValidationResult> cache;
+
+    /**
+     * @param maxEntries the maximum number of documents to keep
+     * @param maxWeightBytes the maximum total size of the documents and sanitized html to keep, in bytes
+     */
+    public HtmlValidationCache(int maxEntries, long maxWeightBytes) {
+        this.cache = new BoundedCache<>(maxEntries, maxWeightBytes, (key, result) -> key.content.length + 2L * result.outputLength());
+    }
+
+    /**
+     * @param settings a key for the settings of the validator, equal for validators giving the same results
+     */
+    HtmlValidationResult get(byte[] content, PolicyFactory policy, Object settings) {
+        return cache.get(new Key(content, policy, settings));
+    }
+
+    void put(byte[] content, PolicyFactory policy, Object settings, HtmlValidationResult result) {
+        cache.put(new Key(content.clone(), policy, settings), result);
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(cache.hitCount(), cache.missCount(), cache.evictionCount(), cache.size(), cache.weight());
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    private static final class Key {
+        final byte[] content;
+        final PolicyFactory policy;
+        final Object settings;
+        final int hash;
+
+        Key(byte[] content, PolicyFactory policy, Object settings) {
+            this.content = content;
+            this.policy = policy;
+            this.settings = settings;
+            this.hash = 31 * (31 * System.identityHashCode(policy) + settings.hashCode()) + Arrays.hashCode(content);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && policy == other.policy && settings.equals(other.settings) && Arrays.equals(content, other.content);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
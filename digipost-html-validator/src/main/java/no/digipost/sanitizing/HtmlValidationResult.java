@@ -15,17 +15,21 @@
  */
 package no.digipost.sanitizing;
 
+import no.digipost.sanitizing.exception.ValidationError;
 import no.digipost.sanitizing.exception.ValidationException;
 
 import java.util.Collections;
 import java.util.List;
 
+import static java.util.stream.Collectors.joining;
+
 public class HtmlValidationResult {
     public static final HtmlValidationResult HTML_EVERYTHING_OK = new HtmlValidationResult(true, false);
+    public static final HtmlValidationResult HTML_OK_WITH_DIFF = new HtmlValidationResult(true, true);
 
     public final boolean okForWeb;
     public final boolean hasDiffAfterSanitizing;
-    private final List<String> validationErrors;
+    private final List<ValidationError> validationErrors;
     private final String output;
 
     public HtmlValidationResult(boolean okForWeb, boolean hasDiffAfterSanitizing) {
@@ -38,7 +42,7 @@ public class HtmlValidationResult {
     public HtmlValidationResult(ValidationException e) {
         this.okForWeb = false;
         this.hasDiffAfterSanitizing = false;
-        this.validationErrors = e.getValidationErrors();
+        this.validationErrors = e.getErrors();
         this.output = "";
     }
 
@@ -49,8 +53,19 @@ public class HtmlValidationResult {
         this.hasDiffAfterSanitizing = true;
     }
 
+    /**
+     * @return the errors which made the document not ok for web, empty if it is ok
+     */
+    public List<ValidationError> getErrors() {
+        return validationErrors;
+    }
+
+    int outputLength() {
+        return output.length();
+    }
+
     @Override
     public String toString() {
-        return "[ " + getClass().getSimpleName() + ((this.okForWeb) ? " OK for web" : "") + "\n" + String.join(", ", validationErrors) + String.join("\n", this.output) + "]";
+        return "[ " + getClass().getSimpleName() + ((this.okForWeb) ? " OK for web" : "") + "\n" + validationErrors.stream().map(ValidationError::getMessage).collect(joining(", ")) + String.join("\n", this.output) + "]";
     }
 }
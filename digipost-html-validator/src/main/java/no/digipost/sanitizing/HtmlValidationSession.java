@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing;
+
+import no.digipost.sanitizing.exception.ValidationException;
+import no.digipost.sanitizing.internal.TagBoundaryScanner;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import no.digipost.sanitizing.metrics.ValidationPhase;
+import org.owasp.html.PolicyFactory;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Validates a document which arrives in pieces, e.g. while it is uploaded. Start a session with
+ * {@link HtmlValidator#startSession()}, {@link #feed(ByteBuffer) feed} it the bytes as they arrive, and
+ * {@link #finish()} it to get the same result as {@link HtmlValidator#valider(byte[])} gives for the whole document.
+ * <p>
+ * The bytes are decoded as they arrive, and may be split anywhere, also inside a UTF-8 char, a tag or a style-element.
+ * While the document grows, the part of it which is known to be parsed the same way as in the whole document is
+ * validated now and then, so that a document which will be rejected is usually found before all of it has arrived.
+ * {@link #feed(ByteBuffer) feed} then returns {@code false}, and the rest of the upload can be aborted. The extra
+ * validations are done each time this part has doubled, so they cost at most as much as validating the whole document once more.
+ * <p>
+ * A session is not thread safe, and validates one document.
+ */
+public final class HtmlValidationSession {
+
+    private static final int MIN_PREFIX_CHARS = 16 * 1024;
+
+    private final HtmlValidator validator;
+    private final DigipostValidatingHtmlSanitizer prefixSanitizer;
+    private final PolicyFactory policy;
+    private final ValidationMetrics metrics;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer incompleteChar = ByteBuffer.allocate(4);
+    private final CharBuffer chars = CharBuffer.allocate(8192);
+    private final StringBuilder document = new StringBuilder();
+    private final TagBoundaryScanner boundaries = new TagBoundaryScanner();
+    private long bytes;
+    private long decodeNanos;
+    private int validatedPrefix;
+    private HtmlValidationResult rejected;
+    private boolean finished;
+
+    HtmlValidationSession(HtmlValidator validator, DigipostValidatingHtmlSanitizer sanitizer, PolicyFactory policy) {
+        this.validator = validator;
+        this.prefixSanitizer = sanitizer.withMetrics(ValidationMetrics.NO_OP);
+        this.policy = policy;
+        this.metrics = sanitizer.metrics();
+    }
+
+    /**
+     * Feed the next bytes of the document, from the position to the limit of the buffer. The bytes are read, and the
+     * position of the buffer is moved to its limit.
+     *
+     * @return {@code false} if the document is already found to be rejected, and the rest of it does not need to be fed
+     */
+    public boolean feed(ByteBuffer content) {
+        if (finished) {
+            throw new IllegalStateException("The session is finished");
+        }
+        if (rejected != null) {
+            ((Buffer) content).position(content.limit());
+            return false;
+        }
+        bytes += content.remaining();
+        final long start = metrics != ValidationMetrics.NO_OP ? System.nanoTime() : 0;
+        final int scanned = document.length();
+        while (incompleteChar.position() > 0 && content.hasRemaining()) {
+            incompleteChar.put(content.get());
+            ((Buffer) incompleteChar).flip();
+            decode(incompleteChar, false);
+            incompleteChar.compact();
+        }
+        decode(content, false);
+        incompleteChar.put(content);
+        if (metrics != ValidationMetrics.NO_OP) {
+            decodeNanos += System.nanoTime() - start;
+        }
+        boundaries.scan(document, scanned, document.length());
+        validatePrefix();
+        return rejected == null;
+    }
+
+    /**
+     * Same as {@link #feed(ByteBuffer)}, for {@code len} bytes of {@code content} starting at {@code off}.
+     */
+    public boolean feed(byte[] content, int off, int len) {
+        return feed(ByteBuffer.wrap(content, off, len));
+    }
+
+    /**
+     * Validate the whole document, when all of it is fed. If the document is already found to be rejected, the
+     * result has the errors found in the part which was validated, and the rest of the document is not validated.
+     *
+     * @return the same result as {@link HtmlValidator#valider(byte[])}, or the rejection found while feeding
+     */
+    public HtmlValidationResult finish() {
+        if (finished) {
+            throw new IllegalStateException("The session is finished");
+        }
+        finished = true;
+        if (rejected != null) {
+            return rejected;
+        }
+        final long start = metrics != ValidationMetrics.NO_OP ? System.nanoTime() : 0;
+        ((Buffer) incompleteChar).flip();
+        decode(incompleteChar, true);
+        while (decoder.flush(chars).isOverflow()) {
+            drainChars();
+        }
+        drainChars();
+        if (metrics != ValidationMetrics.NO_OP) {
+            metrics.documentSize((int) Math.min(bytes, Integer.MAX_VALUE));
+            metrics.phase(ValidationPhase.DECODE, decodeNanos + System.nanoTime() - start);
+        }
+        return validator.valider(document.toString(), policy, metrics);
+    }
+
+    private void decode(ByteBuffer in, boolean endOfInput) {
+        CoderResult result;
+        do {
+            result = decoder.decode(in, chars, endOfInput);
+            drainChars();
+        } while (result.isOverflow());
+    }
+
+    private void drainChars() {
+        ((Buffer) chars).flip();
+        document.append(chars);
+        ((Buffer) chars).clear();
+    }
+
+    private void validatePrefix() {
+        final int boundary = boundaries.lastBoundary();
+        if (boundary - validatedPrefix < Math.max(MIN_PREFIX_CHARS, validatedPrefix)) {
+            return;
+        }
+        validatedPrefix = boundary;
+        try {
+            prefixSanitizer.isUnchangedBySanitizing(document.substring(0, boundary), policy);
+        } catch (ValidationException e) {
+            rejected = new HtmlValidationResult(e);
+        }
+    }
+}
@@ -0,0 +1,415 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing;
+
+import no.digipost.sanitizing.exception.HTMLValidationException;
+import no.digipost.sanitizing.exception.ValidationException;
+import no.digipost.sanitizing.internal.AttributeDecisionCache;
+import no.digipost.sanitizing.internal.ByteChars;
+import no.digipost.sanitizing.internal.DefaultExecutor;
+import no.digipost.sanitizing.internal.HostileHtmlScreen;
+import no.digipost.sanitizing.internal.PolicyFactoryProvider;
+import no.digipost.sanitizing.internal.StylesheetCache;
+import no.digipost.sanitizing.internal.Utf8;
+import no.digipost.sanitizing.internal.WarmUpCorpus;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import no.digipost.sanitizing.metrics.ValidationPhase;
+import org.owasp.html.PolicyFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.IntStream;
+
+import static no.digipost.sanitizing.HtmlValidationResult.HTML_EVERYTHING_OK;
+import static no.digipost.sanitizing.HtmlValidationResult.HTML_OK_WITH_DIFF;
+
+public class HtmlValidator {
+
+    private final DigipostValidatingHtmlSanitizer digipostValidatingHtmlSanitizer;
+    private final Clock clock;
+    private final HtmlValidationCache cache;
+    private final Executor executor;
+    private final boolean preScreen;
+    private final Object resultKey;
+
+    public HtmlValidator() {
+        this(Clock.systemDefaultZone());
+    }
+
+    public HtmlValidator(Clock clock) {
+        this(clock, new DigipostValidatingHtmlSanitizer());
+    }
+
+    /**
+     * @param digipostValidatingHtmlSanitizer the sanitizer to validate with, e.g. one which
+     *                                        {@link DigipostValidatingHtmlSanitizer#withMaxErrors(int) stops after the first error}
+     */
+    public HtmlValidator(Clock clock, DigipostValidatingHtmlSanitizer digipostValidatingHtmlSanitizer) {
+        this(clock, digipostValidatingHtmlSanitizer, null, DefaultExecutor.get(), false);
+    }
+
+    private HtmlValidator(Clock clock, DigipostValidatingHtmlSanitizer digipostValidatingHtmlSanitizer, HtmlValidationCache cache, Executor executor, boolean preScreen) {
+        this.clock = clock;
+        this.digipostValidatingHtmlSanitizer = digipostValidatingHtmlSanitizer;
+        this.cache = cache;
+        this.executor = executor;
+        this.preScreen = preScreen;
+        this.resultKey = Arrays.asList(digipostValidatingHtmlSanitizer.resultKey(), preScreen);
+    }
+
+    /**
+     * Look up documents in the given cache before validating them, and cache the results. A document found in
+     * the cache is not parsed at all. The same cache can be shared by several validators, also validators with different
+     * settings, as results are only found for documents validated with the same settings (except metrics and reuse of buffers).
+     *
+     * @return a new validator using the given cache
+     */
+    public HtmlValidator withCache(HtmlValidationCache cache) {
+        return new HtmlValidator(clock, digipostValidatingHtmlSanitizer, cache, executor, preScreen);
+    }
+
+    /**
+     * Report metrics from the validation, see {@link DigipostValidatingHtmlSanitizer#withMetrics(ValidationMetrics)}.
+     * In addition, the validator reports the size of the documents and the time used to decode them, and to compare the
+     * sanitized html with the original. Documents found in the cache are not reported.
+     *
+     * @return a new validator reporting to the given metrics
+     */
+    public HtmlValidator withMetrics(ValidationMetrics metrics) {
+        return new HtmlValidator(clock, digipostValidatingHtmlSanitizer.withMetrics(metrics), cache, executor, preScreen);
+    }
+
+    /**
+     * Reuse the buffers used to validate a document for the next document validated on the same thread, see
+     * {@link DigipostValidatingHtmlSanitizer#withReusableBuffers()}.
+     *
+     * @return a new validator reusing its buffers for each thread
+     */
+    public HtmlValidator withReusableBuffers() {
+        return new HtmlValidator(clock, digipostValidatingHtmlSanitizer.withReusableBuffers(), cache, executor, preScreen);
+    }
+
+    /**
+     * Screen the bytes of the documents for what the policy never accepts before decoding and parsing them, and reject
+     * documents found to contain any of it right away, see {@link DigipostValidatingHtmlSanitizer#withPreScreen()}.
+     * Documents from {@link #startSession()} are not screened.
+     *
+     * @return a new validator screening the documents before validating them
+     */
+    public HtmlValidator withPreScreen() {
+        return new HtmlValidator(clock, digipostValidatingHtmlSanitizer, cache, executor, true);
+    }
+
+    /**
+     * Validate batches of documents and {@link #validerAsync(byte[]) asynchronous validations} using the given executor.
+     * The default is a virtual thread per document on Java 21 or newer, and {@link java.util.concurrent.ForkJoinPool#commonPool()}
+     * on older versions.
+     *
+     * @return a new validator using the given executor
+     */
+    public HtmlValidator withExecutor(Executor executor) {
+        return new HtmlValidator(clock, digipostValidatingHtmlSanitizer, cache, executor, preScreen);
+    }
+
+    /**
+     * Validate several documents in parallel, see {@link #withExecutor(Executor)}.
+     * <p>
+     * Every document is validated as a separate task, and the largest documents are started first. This way a
+     * single huge document is validated while the rest of the batch is spread on the other threads, instead of
+     * being started last and holding up the whole batch.
+     *
+     * @return the results, in the same order as the documents
+     */
+    public List<HtmlValidationResult> valider(List<byte[]> contents) {
+        List<CompletableFuture<HtmlValidationResult>> futures = new ArrayList<>(contents.size());
+        for (int i = 0; i < contents.size(); i++) {
+            futures.add(null);
+        }
+        IntStream.range(0, contents.size()).boxed()
+            .sorted(Comparator.comparingInt((Integer i) -> contents.get(i).length).reversed())
+            .forEachOrdered(i -> futures.set(i, CompletableFuture.supplyAsync(() -> valider(contents.get(i)), executor)));
+
+        List<HtmlValidationResult> results = new ArrayList<>(contents.size());
+        for (CompletableFuture<HtmlValidationResult> future : futures) {
+            results.add(join(future));
+        }
+        return results;
+    }
+
+    /**
+     * Same as {@link #valider(byte[])}, but validates on the executor given by {@link #withExecutor(Executor)}, so
+     * that it can be called without blocking the calling thread. The content must not be changed until the
+     * returned future is completed.
+     */
+    public CompletableFuture<HtmlValidationResult> validerAsync(byte[] content) {
+        return CompletableFuture.supplyAsync(() -> valider(content), executor);
+    }
+
+    /**
+     * Validate a built-in set of documents with both the V1 and the V2 policy, on the calling thread, so that the
+     * sanitizer and the validation of html, css and images is compiled by the JIT before real documents are validated.
+     * The documents are validated both with {@link #valider(byte[])} and {@link #validerVerdikt(byte[])}, but
+     * bypassing the cache, and without reporting metrics. Neither are the stylesheets and attribute values of the
+     * documents cached, see {@link #stylesheetCacheStats()} and {@link #attributeCacheStats()}, so they are validated in
+     * every iteration.
+     * <p>
+     * Call this before taking traffic, e.g. from a readiness check. The warm-up stops after the given number of
+     * iterations over the documents, or when the time is up, whichever comes first.
+     *
+     * @param iterations the number of times to validate the documents, at least 1
+     * @param maxTime the time to spend at most, though the iteration running when it is up is completed
+     * @return the number of iterations done
+     */
+    public int warmUp(int iterations, Duration maxTime) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be at least 1, was " + iterations);
+        }
+        if (maxTime.isNegative()) {
+            throw new IllegalArgumentException("maxTime can not be negative, was " + maxTime);
+        }
+        final HtmlValidator validator = new HtmlValidator(clock, digipostValidatingHtmlSanitizer.withMetrics(ValidationMetrics.NO_OP).withoutSharedCaches(), null, executor, preScreen);
+        final List<byte[]> documents = WarmUpCorpus.documents();
+        final PolicyFactory[] policies = {
+            PolicyFactoryProvider.getPolicyFactory(PolicyFactoryProvider.V2_IN_EFFECT.minusSeconds(1)),
+            PolicyFactoryProvider.getPolicyFactory(PolicyFactoryProvider.V2_IN_EFFECT)};
+        final long deadline = System.nanoTime() + Math.min(maxTime.toNanos(), Long.MAX_VALUE / 2);
+        int done = 0;
+        while (done < iterations && (done == 0 || deadline - System.nanoTime() > 0)) {
+            for (byte[] document : documents) {
+                for (PolicyFactory policy : policies) {
+                    validator.valider(document, policy);
+                    validator.validerVerdikt(document, policy);
+                }
+            }
+            done++;
+        }
+        return done;
+    }
+
+    public HtmlValidationResult valider(byte[] content) {
+        final PolicyFactory policy = PolicyFactoryProvider.getPolicyFactory(clock.instant());
+        if (cache == null) {
+            return valider(content, policy);
+        }
+        HtmlValidationResult result = cache.get(content, policy, resultKey);
+        if (result == null) {
+            result = valider(content, policy);
+            cache.put(content, policy, resultKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Validate a document in a file, see {@link #valider(ByteBuffer)}.
+     *
+     * @throws IOException if the file can not be read
+     */
+    public HtmlValidationResult valider(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Can not validate " + file + " of " + size + " bytes, the limit is " + Integer.MAX_VALUE + " bytes");
+            }
+            // The mapping stays valid after the channel is closed
+            return valider(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Same as {@link #valider(byte[])}, for the bytes from the position to the limit of a buffer, which may be a
+     * direct or memory mapped buffer. The bytes are decoded straight from the buffer in small chunks, without copying
+     * the document to a {@code byte[]} first. The position of the buffer is not changed.
+     * <p>
+     * The cache is not used, as it would need a copy of the document.
+     */
+    public HtmlValidationResult valider(ByteBuffer content) {
+        final PolicyFactory policy = PolicyFactoryProvider.getPolicyFactory(clock.instant());
+        final ValidationMetrics metrics = digipostValidatingHtmlSanitizer.metrics();
+        final HtmlValidationResult screened = screen(new ByteChars(content), policy, metrics);
+        return screened != null ? screened : valider(decode(content, metrics), policy, metrics);
+    }
+
+    /**
+     * Compile a template for documents which are the same except for some text, see {@link HtmlTemplate}. The slots
+     * for the text are marked with their names in double curly braces, like {@code <p>Hei {{navn}}!</p>}, and can only
+     * be in plain text. Documents which do not match the template are validated by this validator.
+     *
+     * @throws ValidationException if the template, with some letters in the slots, is not valid
+     * @throws IllegalArgumentException if the template is changed by sanitizing, or a slot is not in plain text
+     */
+    public HtmlTemplate compileTemplate(String template) {
+        return HtmlTemplate.compile(this, digipostValidatingHtmlSanitizer, policy(), template);
+    }
+
+    /**
+     * Start validating a document which arrives in pieces, see {@link HtmlValidationSession}. The cache is not used.
+     */
+    public HtmlValidationSession startSession() {
+        return new HtmlValidationSession(this, digipostValidatingHtmlSanitizer, PolicyFactoryProvider.getPolicyFactory(clock.instant()));
+    }
+
+    /**
+     * Statistics of the cache of attribute values shared by all validators. A value like {@code class="header"} is
+     * matched by the policy once, and the outcome reused for later documents with the same value in the same attribute
+     * of the same element. The weight is the total length of the cached values, in chars.
+     */
+    public static CacheStats attributeCacheStats() {
+        AttributeDecisionCache cache = AttributeDecisionCache.SHARED;
+        return new CacheStats(cache.hitCount(), cache.missCount(), cache.evictionCount(), cache.size(), cache.weight());
+    }
+
+    /**
+     * Statistics of the cache of {@code <style>} elements shared by all validators. A stylesheet is validated once, and
+     * the outcome, the escaped css or the errors, reused for later documents with the very same stylesheet. The weight
+     * is the total length of the cached stylesheets, in chars.
+     */
+    public static CacheStats stylesheetCacheStats() {
+        StylesheetCache cache = StylesheetCache.SHARED;
+        return new CacheStats(cache.hitCount(), cache.missCount(), cache.evictionCount(), cache.size(), cache.weight());
+    }
+
+    PolicyFactory policy() {
+        return PolicyFactoryProvider.getPolicyFactory(clock.instant());
+    }
+
+    private HtmlValidationResult valider(byte[] content, PolicyFactory policy) {
+        final ValidationMetrics metrics = digipostValidatingHtmlSanitizer.metrics();
+        final HtmlValidationResult screened = screen(new ByteChars(content), policy, metrics);
+        return screened != null ? screened : valider(decode(content, metrics), policy, metrics);
+    }
+
+    /**
+     * @return the result if the bytes are rejected by the {@link #withPreScreen() pre-screen}, or {@code null}
+     */
+    private HtmlValidationResult screen(ByteChars content, PolicyFactory policy, ValidationMetrics metrics) {
+        if (!preScreen) {
+            return null;
+        }
+        try {
+            HostileHtmlScreen.check(content, policy, metrics);
+            return null;
+        } catch (HTMLValidationException e) {
+            return new HtmlValidationResult(e);
+        }
+    }
+
+    HtmlValidationResult valider(String input, PolicyFactory policy, ValidationMetrics metrics) {
+        try {
+            final String output = this.digipostValidatingHtmlSanitizer.sanitize(input, policy);
+            final long start = metrics != ValidationMetrics.NO_OP ? System.nanoTime() : 0;
+            final boolean unchanged = input.equals(output);
+            if (metrics != ValidationMetrics.NO_OP) {
+                metrics.phase(ValidationPhase.COMPARE, System.nanoTime() - start);
+            }
+            if (unchanged) {
+                return HTML_EVERYTHING_OK;
+            } else {
+                return new HtmlValidationResult(output);
+            }
+        } catch (ValidationException e) {
+            return new HtmlValidationResult(e);
+        }
+    }
+
+    /**
+     * Same verdict as {@link #valider(byte[])}, but without the sanitized html. If sanitizing changes the document,
+     * {@link HtmlValidationResult#HTML_OK_WITH_DIFF} is returned instead of a result containing the sanitized html.
+     * <p>
+     * Use this when you only need {@code okForWeb}/{@code hasDiffAfterSanitizing}, as it does not build the sanitized document.
+     * If a cache is used, results from {@link #valider(byte[])} are used as well, but only results without sanitized html
+     * are added to the cache.
+     */
+    public HtmlValidationResult validerVerdikt(byte[] content) {
+        final PolicyFactory policy = PolicyFactoryProvider.getPolicyFactory(clock.instant());
+        if (cache == null) {
+            return validerVerdikt(content, policy);
+        }
+        HtmlValidationResult result = cache.get(content, policy, resultKey);
+        if (result == null) {
+            result = validerVerdikt(content, policy);
+            if (result != HTML_OK_WITH_DIFF) {
+                cache.put(content, policy, resultKey, result);
+            }
+        }
+        return result.hasDiffAfterSanitizing ? HTML_OK_WITH_DIFF : result;
+    }
+
+    private HtmlValidationResult validerVerdikt(byte[] content, PolicyFactory policy) {
+        final ValidationMetrics metrics = digipostValidatingHtmlSanitizer.metrics();
+        final HtmlValidationResult screened = screen(new ByteChars(content), policy, metrics);
+        if (screened != null) {
+            return screened;
+        }
+        try {
+            final String input = decode(content, metrics);
+            if (this.digipostValidatingHtmlSanitizer.isUnchangedBySanitizing(input, policy)) {
+                return HTML_EVERYTHING_OK;
+            } else {
+                return HTML_OK_WITH_DIFF;
+            }
+        } catch (ValidationException e) {
+            return new HtmlValidationResult(e);
+        }
+    }
+
+    private static String decode(byte[] content, ValidationMetrics metrics) {
+        if (metrics == ValidationMetrics.NO_OP) {
+            return new String(content, StandardCharsets.UTF_8);
+        }
+        metrics.documentSize(content.length);
+        final long start = System.nanoTime();
+        final String decoded = new String(content, StandardCharsets.UTF_8);
+        metrics.phase(ValidationPhase.DECODE, System.nanoTime() - start);
+        return decoded;
+    }
+
+    private static String decode(ByteBuffer content, ValidationMetrics metrics) {
+        if (metrics == ValidationMetrics.NO_OP) {
+            return Utf8.decode(content);
+        }
+        metrics.documentSize(content.remaining());
+        final long start = System.nanoTime();
+        final String decoded = Utf8.decode(content);
+        metrics.phase(ValidationPhase.DECODE, System.nanoTime() - start);
+        return decoded;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package no.digipost.sanitizing.exception;
 
+import java.util.Collection;
 import java.util.List;
 
 public final class CSSValidationException extends ValidationException {
@@ -22,4 +23,15 @@ public final class CSSValidationException extends ValidationException {
 	public CSSValidationException(List<String> validationErrors) {
 		super(validationErrors);
 	}
+
+	private CSSValidationException(Collection<ValidationError> errors) {
+		super(errors);
+	}
+
+	/**
+	 * An exception with structured errors, see {@link #getErrors()}.
+	 */
+	public static CSSValidationException ofErrors(Collection<ValidationError> errors) {
+		return new CSSValidationException(errors);
+	}
 }
@@ -15,6 +15,7 @@
  */
 package no.digipost.sanitizing.exception;
 
+import java.util.Collection;
 import java.util.List;
 
 public class HTMLValidationException extends ValidationException {
@@ -22,4 +23,15 @@ public class HTMLValidationException extends ValidationException {
 	public HTMLValidationException(List<String> validationErrors) {
 		super(validationErrors);
 	}
+
+	private HTMLValidationException(Collection<ValidationError> errors) {
+		super(errors);
+	}
+
+	/**
+	 * An exception with structured errors, see {@link #getErrors()}.
+	 */
+	public static HTMLValidationException ofErrors(Collection<ValidationError> errors) {
+		return new HTMLValidationException(errors);
+	}
 }
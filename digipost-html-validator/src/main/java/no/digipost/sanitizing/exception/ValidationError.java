@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.exception;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One error found when validating a document. The parts of the error are available on their own, and the
+ * message is only formatted when {@link #getMessage()} is called.
+ */
+public final class ValidationError implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public enum Code {
+		/** A tag which is not allowed, see {@link #getElement()}. */
+		ILLEGAL_TAG,
+		/** Attributes which are not allowed, see {@link #getElement()} and {@link #getAttributes()}. */
+		ILLEGAL_ATTRIBUTES,
+		/** An image larger than the limit, see {@link #getLimit()}. */
+		IMAGE_TOO_LARGE,
+		/** Images in the document larger than the limit, see {@link #getLimit()}. */
+		IMAGES_TOO_LARGE,
+		/** The document needs more steps than the limit to match its values, see {@link #getLimit()}. */
+		MATCH_STEPS_EXCEEDED,
+		/** The css of a style-element is not on the form {@code selector { property: value; }}. */
+		INVALID_CSS,
+		CSS_SELECTOR_NOT_FOUND,
+		/** The content of a css rule contains a blacklisted word, see {@link #getCssSelector()}. */
+		CSS_ILLEGAL_WORDS,
+		/** See {@link #getCssProperty()} and {@link #getCssValue()}. */
+		CSS_VALUE_NOT_ALLOWED,
+		/** See {@link #getCssProperty()}. */
+		CSS_PROPERTY_NOT_ALLOWED,
+		CSS_DECLARATION_NOT_TERMINATED,
+		/** The malformed declarations are in {@link #getCssValue()}. */
+		CSS_MALFORMED_DECLARATION,
+		/** An error given only as a message. */
+		OTHER
+	}
+
+	private final Code code;
+	private final String element;
+	private final List<String> attributes;
+	private final String cssSelector;
+	private final String cssProperty;
+	private final String cssValue;
+	private final long limit;
+	private final int offset;
+	private String message;
+
+	private ValidationError(Code code, String element, List<String> attributes, String cssSelector, String cssProperty, String cssValue, long limit, int offset, String message) {
+		this.code = code;
+		this.element = element;
+		this.attributes = attributes;
+		this.cssSelector = cssSelector;
+		this.cssProperty = cssProperty;
+		this.cssValue = cssValue;
+		this.limit = limit;
+		this.offset = offset;
+		this.message = message;
+	}
+
+	/**
+	 * An error in an html element, {@link Code#ILLEGAL_TAG} or {@link Code#ILLEGAL_ATTRIBUTES}.
+	 */
+	public static ValidationError html(Code code, String element, String... attributes) {
+		return new ValidationError(code, element, Collections.unmodifiableList(Arrays.asList(attributes.clone())), null, null, null, -1, -1, null);
+	}
+
+	/**
+	 * An error in the css of a style-element.
+	 *
+	 * @param offset where in the css of the style-element the error is, or -1 if not known
+	 */
+	public static ValidationError css(Code code, String cssSelector, String cssProperty, String cssValue, int offset) {
+		return new ValidationError(code, null, Collections.emptyList(), cssSelector, cssProperty, cssValue, -1, offset, null);
+	}
+
+	/**
+	 * A limit set on the sanitizer has been exceeded, {@link Code#IMAGE_TOO_LARGE}, {@link Code#IMAGES_TOO_LARGE} or {@link Code#MATCH_STEPS_EXCEEDED}.
+	 */
+	public static ValidationError limit(Code code, long limit) {
+		return new ValidationError(code, null, Collections.emptyList(), null, null, null, limit, -1, null);
+	}
+
+	/**
+	 * An error with code {@link Code#OTHER}, given only as a message.
+	 */
+	public static ValidationError message(String message) {
+		return new ValidationError(Code.OTHER, null, Collections.emptyList(), null, null, null, -1, -1, message);
+	}
+
+	public Code getCode() {
+		return code;
+	}
+
+	/**
+	 * @return the name of the html element, or {@code null}
+	 */
+	public String getElement() {
+		return element;
+	}
+
+	/**
+	 * @return the names of the html attributes, which may be empty
+	 */
+	public List<String> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * @return the css selector, or {@code null}
+	 */
+	public String getCssSelector() {
+		return cssSelector;
+	}
+
+	/**
+	 * @return the css property, or {@code null}
+	 */
+	public String getCssProperty() {
+		return cssProperty;
+	}
+
+	/**
+	 * @return the css value, or {@code null}
+	 */
+	public String getCssValue() {
+		return cssValue;
+	}
+
+	/**
+	 * @return the limit which was exceeded, or -1
+	 */
+	public long getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return where in the css of the style-element the error is, or -1 if not known. Where html errors are in the
+	 *         document is not known, as the sanitizer does not report it.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the error as text, the same as in {@link ValidationException#getValidationErrors()}
+	 */
+	public String getMessage() {
+		String formatted = message;
+		if (formatted == null) {
+			formatted = format();
+			message = formatted;
+		}
+		return formatted;
+	}
+
+	private String format() {
+		switch (code) {
+			case ILLEGAL_TAG: return "Found HTML policy violation. Tag name: " + element;
+			case ILLEGAL_ATTRIBUTES: return "Found HTML policy violation: Tag name: " + element + ", attribute(s): " + String.join(", ", attributes);
+			case IMAGE_TOO_LARGE: return "Image is larger than the limit of " + limit + " bytes.";
+			case IMAGES_TOO_LARGE: return "Images in document are larger than the limit of " + limit + " bytes.";
+			case MATCH_STEPS_EXCEEDED: return "Document exceeds the limit of " + limit + " steps for matching attribute and css values.";
+			case INVALID_CSS: return "CSS in style-element is invalid.";
+			case CSS_SELECTOR_NOT_FOUND: return "CSS selector not found. Indicates illegal css.";
+			case CSS_ILLEGAL_WORDS: return "Content of selector '" + cssSelector + "' contains one or more illegal words.";
+			case CSS_VALUE_NOT_ALLOWED: return "Value '" + cssValue + "' is not allowed for property '" + cssProperty + "'.";
+			case CSS_PROPERTY_NOT_ALLOWED: return "Property '" + cssProperty + "' is not allowed.";
+			case CSS_DECLARATION_NOT_TERMINATED: return "Declaration must end with ';'.";
+			case CSS_MALFORMED_DECLARATION: return "Malformed declaration: " + cssValue + " .";
+			default: return String.valueOf(message);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return code + ": " + getMessage();
+	}
+}
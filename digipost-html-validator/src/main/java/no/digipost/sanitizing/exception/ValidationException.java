@@ -15,17 +15,43 @@
  */
 package no.digipost.sanitizing.exception;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class ValidationException extends RuntimeException {
 
-	private final List<String> validationErrors;
+	private final List<ValidationError> errors;
 
 	public ValidationException(List<String> validationErrors) {
-		this.validationErrors = validationErrors;
+		this(validationErrors.stream().map(ValidationError::message).collect(Collectors.toList()));
 	}
 
+	ValidationException(Collection<ValidationError> errors) {
+		this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+	}
+
+	/**
+	 * @return the errors as text. Each message is formatted when it is first read.
+	 */
 	public List<String> getValidationErrors() {
-		return validationErrors;
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				return errors.get(index).getMessage();
+			}
+
+			@Override
+			public int size() {
+				return errors.size();
+			}
+		};
+	}
+
+	public List<ValidationError> getErrors() {
+		return errors;
 	}
 }
@@ -19,16 +19,17 @@ import org.owasp.html.AttributePolicy;
 import org.owasp.html.CssSchema;
 import org.owasp.html.ElementPolicy;
 import org.owasp.html.HtmlPolicyBuilder;
+import org.owasp.html.HtmlStreamEventProcessor;
 import org.owasp.html.PolicyFactory;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static no.digipost.sanitizing.internal.ValidatorPatterns.ALIGN;
@@ -51,6 +52,7 @@ import static no.digipost.sanitizing.internal.ValidatorPatterns.PARAGRAPH;
 import static no.digipost.sanitizing.internal.ValidatorPatterns.TARGET_BLANK;
 import static no.digipost.sanitizing.internal.ValidatorPatterns.TYPE_AND_CHARSET;
 import static no.digipost.sanitizing.internal.ValidatorPatterns.VALIGN;
+import static no.digipost.sanitizing.internal.ValueMatcher.regex;
 
 /**
  * OWASP HTML Sanitizer Policy based on the example EBAY policy at
@@ -70,6 +72,18 @@ final class ApiHtmlValidatorPolicy {
     private static final Set<String> CSS_WHITELIST;
     static final Map<String, Predicate<String>> CSS_PROPERTY_WHITELIST;
     private static final String[] KITH_TAGS = {"abbr", "acronym", "address", "dfn", "kbd", "q", "var", "tt", "caption"};
+    private static final String[] ELEMENTS = {
+        "html", "body", "head", "title", "meta", "base", "style",
+        "a", "label", "h1", "h2", "h3", "h4", "h5", "h6",
+        "p", "i", "b", "u", "strong", "em", "small", "big", "pre", "code",
+        "cite", "samp", "sub", "sup", "strike", "center", "blockquote",
+        "hr", "br", "col", "font", "map", "span", "div", "img",
+        "ul", "ol", "li", "dd", "dt", "dl", "tbody", "thead", "tfoot",
+        "table", "td", "th", "tr", "colgroup", "fieldset", "legend",
+        "figure", "figcaption", "header", "nav", "section", "aside",
+        "article", "footer", "hgroup", "main"
+    };
+    private static final Set<String> ALLOWED_ELEMENTS;
 
     static {
         HashSet<String> defaultProperties = new HashSet<>(CssSchema.DEFAULT.allowedProperties());
@@ -94,10 +108,14 @@ final class ApiHtmlValidatorPolicy {
         propertyValueWhitelist.put("justify-content", value -> value.equals("flex-start") || value.equals("flex-end") || value.equals("center") || value.equals("space-between") || value.equals("space-around") || value.equals("space-evenly"));
         propertyValueWhitelist.put("align-items", value -> value.equals("flex-start") || value.equals("flex-end") || value.equals("center") || value.equals("baseline") || value.equals("stretch"));
         propertyValueWhitelist.put("align-self", value -> value.equals("auto") || value.equals("flex-start") || value.equals("flex-end") || value.equals("center") || value.equals("baseline") || value.equals("stretch"));
-        propertyValueWhitelist.put("gap", value -> DIMENSION.matcher(value).matches());
+        propertyValueWhitelist.put("gap", value -> DIMENSION.test(value));
         propertyValueWhitelist.put("flex", ApiHtmlValidatorPolicy::validateFlexProperty);
 
         CSS_PROPERTY_WHITELIST = Collections.unmodifiableMap(propertyValueWhitelist);
+
+        HashSet<String> allowedElements = new HashSet<>(Arrays.asList(ELEMENTS));
+        allowedElements.addAll(Arrays.asList(KITH_TAGS));
+        ALLOWED_ELEMENTS = Collections.unmodifiableSet(allowedElements);
     }
 
     private static boolean validateFlexProperty(String value) {
@@ -105,9 +123,9 @@ final class ApiHtmlValidatorPolicy {
         if (values.length < 1 || values.length > 3) {
             return false;
         }
-        boolean hasValidFlexGrowValue = NUMBER.matcher(values[0]).matches();
-        boolean hasValidFlexShrinkValue = values.length < 2 || NUMBER.matcher(values[1]).matches();
-        boolean hasValidFlexBasisValue = values.length < 3 || FLEX_BASIS.matcher(values[2]).matches();
+        boolean hasValidFlexGrowValue = NUMBER.test(values[0]);
+        boolean hasValidFlexShrinkValue = values.length < 2 || NUMBER.test(values[1]);
+        boolean hasValidFlexBasisValue = values.length < 3 || FLEX_BASIS.test(values[2]);
 
         return hasValidFlexGrowValue && hasValidFlexShrinkValue && hasValidFlexBasisValue;
     }
@@ -119,71 +137,61 @@ final class ApiHtmlValidatorPolicy {
         .allowStandardUrlProtocols().allowUrlProtocols("data")
 
         // Global attribute definitions
-        .allowAttributes("id").matching(HTML_ID).globally()
-        .allowAttributes("class").matching(HTML_CLASS).globally()
-        .allowAttributes("lang").matching(Pattern.compile("[a-zA-Z]{2,20}")).globally()
-        .allowAttributes("title").matching(HTML_TITLE).globally()
+        .allowAttributes("id").matching(cached(HTML_ID)).globally()
+        .allowAttributes("class").matching(cached(HTML_CLASS)).globally()
+        .allowAttributes("lang").matching(cached(regex("[a-zA-Z]{2,20}"))).globally()
+        .allowAttributes("title").matching(cached(HTML_TITLE)).globally()
 
-        .allowAttributes("align").matching(ALIGN).onElements("p")
+        .allowAttributes("align").matching(cached(ALIGN)).onElements("p")
 
-        .allowAttributes("for").matching(HTML_ID).onElements("label")
+        .allowAttributes("for").matching(cached(HTML_ID)).onElements("label")
 
-        .allowAttributes("color").matching(COLOR_NAME_OR_COLOR_CODE::test).onElements("font")
-        .allowAttributes("face").matching(Pattern.compile("[\\w;, \\-]+")).onElements("font")
-        .allowAttributes("size").matching(NUMBER).onElements("font")
+        .allowAttributes("color").matching(cached(COLOR_NAME_OR_COLOR_CODE)).onElements("font")
+        .allowAttributes("face").matching(cached(regex("[\\w;, \\-]+"))).onElements("font")
+        .allowAttributes("size").matching(cached(NUMBER)).onElements("font")
 
         .allowElements(addingAttributeIfMissing("target", "_blank"), "a")
         .allowAttributes("target").matching(value("_blank")).onElements("a")
-        .allowAttributes("href").matching(ONSITE_OR_OFFSITE_URL::test).onElements("a")
+        .allowAttributes("href").matching(cached(ONSITE_OR_OFFSITE_URL)).onElements("a")
         .allowAttributes("nohref").onElements("a")
-        .allowAttributes("name").matching(NAME).onElements("a")
+        .allowAttributes("name").matching(cached(NAME)).onElements("a")
         .requireRelNofollowOnLinks()
         .requireRelsOnLinks("noreferrer", "noopener") // Prevent target link page from being able to communicate with ours (https://www.jitbit.com/alexblog/256-targetblank---the-most-underestimated-vulnerability-ever/)
 
         .allowAttributes("src").matching(IMAGE_DATA_URL).onElements("img")
         .allowAttributes("alt").onElements("img")
 
-        .allowAttributes("border", "cellpadding", "cellspacing").matching(NUMBER).onElements("table")
-        .allowAttributes("bgcolor").matching(COLOR_NAME_OR_COLOR_CODE::test).onElements("table")
-        .allowAttributes("background").matching(ONSITE_URL).onElements("table")
-        .allowAttributes("align").matching(ALIGN).onElements("table")
-        .allowAttributes("noresize").matching(Pattern.compile("(?i)noresize")).onElements("table")
-
-        .allowAttributes("background").matching(ONSITE_URL).onElements("td", "th", "tr")
-        .allowAttributes("bgcolor").matching(COLOR_NAME_OR_COLOR_CODE::test).onElements("td", "th")
-        .allowAttributes("abbr").matching(PARAGRAPH).onElements("td", "th")
-        .allowAttributes("axis", "headers").matching(NAME).onElements("td", "th")
-        .allowAttributes("scope").matching(Pattern.compile("(?i)(?:row|col)(?:group)?")).onElements("td", "th")
+        .allowAttributes("border", "cellpadding", "cellspacing").matching(cached(NUMBER)).onElements("table")
+        .allowAttributes("bgcolor").matching(cached(COLOR_NAME_OR_COLOR_CODE)).onElements("table")
+        .allowAttributes("background").matching(cached(ONSITE_URL)).onElements("table")
+        .allowAttributes("align").matching(cached(ALIGN)).onElements("table")
+        .allowAttributes("noresize").matching(cached(regex("(?i)noresize"))).onElements("table")
+
+        .allowAttributes("background").matching(cached(ONSITE_URL)).onElements("td", "th", "tr")
+        .allowAttributes("bgcolor").matching(cached(COLOR_NAME_OR_COLOR_CODE)).onElements("td", "th")
+        .allowAttributes("abbr").matching(cached(PARAGRAPH)).onElements("td", "th")
+        .allowAttributes("axis", "headers").matching(cached(NAME)).onElements("td", "th")
+        .allowAttributes("scope").matching(cached(regex("(?i)(?:row|col)(?:group)?"))).onElements("td", "th")
         .allowAttributes("nowrap").onElements("td", "th")
 
-        .allowAttributes("height", "width").matching(NUMBER_OR_PERCENT).onElements("table", "td", "th", "tr", "img", "hr")
-        .allowAttributes("align").matching(ALIGN).onElements("thead", "tbody", "tfoot", "img", "td", "th", "tr", "colgroup", "col", "hr")
-        .allowAttributes("valign").matching(VALIGN).onElements("thead", "tbody", "tfoot", "td", "th", "tr", "colgroup", "col")
-        .allowAttributes("charoff").matching(NUMBER_OR_PERCENT).onElements("td", "th", "tr", "colgroup", "col", "thead", "tbody", "tfoot")
-        .allowAttributes("char").matching(ONE_CHAR).onElements("td", "th", "tr", "colgroup", "col", "thead", "tbody", "tfoot")
-        .allowAttributes("colspan", "rowspan").matching(NUMBER).onElements("td", "th")
-        .allowAttributes("span", "width").matching(NUMBER_OR_PERCENT).onElements("colgroup", "col")
+        .allowAttributes("height", "width").matching(cached(NUMBER_OR_PERCENT)).onElements("table", "td", "th", "tr", "img", "hr")
+        .allowAttributes("align").matching(cached(ALIGN)).onElements("thead", "tbody", "tfoot", "img", "td", "th", "tr", "colgroup", "col", "hr")
+        .allowAttributes("valign").matching(cached(VALIGN)).onElements("thead", "tbody", "tfoot", "td", "th", "tr", "colgroup", "col")
+        .allowAttributes("charoff").matching(cached(NUMBER_OR_PERCENT)).onElements("td", "th", "tr", "colgroup", "col", "thead", "tbody", "tfoot")
+        .allowAttributes("char").matching(cached(ONE_CHAR)).onElements("td", "th", "tr", "colgroup", "col", "thead", "tbody", "tfoot")
+        .allowAttributes("colspan", "rowspan").matching(cached(NUMBER)).onElements("td", "th")
+        .allowAttributes("span", "width").matching(cached(NUMBER_OR_PERCENT)).onElements("colgroup", "col")
 
-        .allowAttributes("type").matching(CSS_TYPE).onElements("style")
-        .allowAttributes("target").matching(TARGET_BLANK).onElements("base")
+        .allowAttributes("type").matching(cached(CSS_TYPE)).onElements("style")
+        .allowAttributes("target").matching(cached(TARGET_BLANK)).onElements("base")
 
         .allowAttributes("http-equiv").matching(true, "content-type").onElements("meta")
         .allowAttributes("charset").onElements("meta")
         .allowAttributes("name").matching(true, "viewport").onElements("meta")
-        .allowAttributes("content").matching(oneOf(META_VIEWPORT_VALUES, TYPE_AND_CHARSET)).onElements("meta")
+        .allowAttributes("content").matching(oneOf(Arrays.asList(META_VIEWPORT_VALUES, TYPE_AND_CHARSET))).onElements("meta")
 
         .allowElements(KITH_TAGS)
-        .allowElements(
-            "html", "body", "head", "title", "meta", "base", "style",
-            "a", "label", "h1", "h2", "h3", "h4", "h5", "h6",
-            "p", "i", "b", "u", "strong", "em", "small", "big", "pre", "code",
-            "cite", "samp", "sub", "sup", "strike", "center", "blockquote",
-            "hr", "br", "col", "font", "map", "span", "div", "img",
-            "ul", "ol", "li", "dd", "dt", "dl", "tbody", "thead", "tfoot",
-            "table", "td", "th", "tr", "colgroup", "fieldset", "legend",
-            "figure", "figcaption", "header", "nav", "section", "aside",
-            "article", "footer", "hgroup", "main"
-        )
+        .allowElements(ELEMENTS)
 
 
         // Spans without attributes are usually stripped (because they semantically are the same as just the span contents).
@@ -192,11 +200,44 @@ final class ApiHtmlValidatorPolicy {
         .toFactory();
 
 
+    private static final StyleElementPreprocessor STYLE_ELEMENT_PREPROCESSOR = new StyleElementPreprocessor();
+
     static final PolicyFactory V2_VALIDATE_HTML_AND_CSS_POLICY = V1_VALIDATE_ONLY_HTML_POLICY.and(new HtmlPolicyBuilder()
             .allowTextIn("style")
-            .withPreprocessor(new StyleElementPreprocessor())
+            .withPreprocessor(STYLE_ELEMENT_PREPROCESSOR)
             .toFactory());
 
+    /**
+     * PolicyFactory does not expose its preprocessor, which is needed to sanitize to anything else than a String.
+     * We know the preprocessors of our own policies, and those are the only ones we can render directly.
+     */
+    static Optional<HtmlStreamEventProcessor> preprocessorOf(PolicyFactory policy) {
+        if (policy == V1_VALIDATE_ONLY_HTML_POLICY) {
+            return Optional.of(HtmlStreamEventProcessor.Processors.IDENTITY);
+        } else if (policy == V2_VALIDATE_HTML_AND_CSS_POLICY) {
+            return Optional.of(STYLE_ELEMENT_PREPROCESSOR);
+        } else {
+            return Optional.empty();
+        }
+    }
+
+
+    /**
+     * @return true if the element is allowed by both {@link #V1_VALIDATE_ONLY_HTML_POLICY} and {@link #V2_VALIDATE_HTML_AND_CSS_POLICY}
+     */
+    static boolean allowsElement(String elementName) {
+        return ALLOWED_ELEMENTS.contains(elementName);
+    }
+
+    static String versionOf(PolicyFactory policy) {
+        if (policy == V1_VALIDATE_ONLY_HTML_POLICY) {
+            return "V1";
+        } else if (policy == V2_VALIDATE_HTML_AND_CSS_POLICY) {
+            return "V2";
+        } else {
+            return "custom";
+        }
+    }
 
 
     private static AttributePolicy value(final String mustHaveValue) {
@@ -209,9 +250,16 @@ final class ApiHtmlValidatorPolicy {
         };
     }
 
-    private static AttributePolicy oneOf(final Pattern... patterns) {
+    /**
+     * Outcomes are cached across documents, see {@link AttributeDecisionCache}.
+     */
+    private static AttributePolicy cached(final ValueMatcher matcher) {
+        return (elementName, attributeName, value) -> AttributeDecisionCache.SHARED.matches(matcher, elementName, attributeName, value) ? value : null;
+    }
+
+    private static AttributePolicy oneOf(final List<Predicate<String>> matchers) {
         return (elementName, attributeName, value) -> {
-            Optional<Pattern> match = Arrays.stream(patterns).filter(pattern -> pattern.matcher(value).matches()).findFirst();
+            Optional<Predicate<String>> match = matchers.stream().filter(matcher -> matcher.test(value)).findFirst();
 
             return match.isPresent() ? value : null;
         };
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache of the outcome of matching attribute values, shared by all documents, so values seen over and over again,
+ * like {@code class="header"} or {@code align="center"}, are matched only once.
+ * <p>
+ * Outcomes are cached by the matcher, the element and attribute names, and the value. The cache is split into
+ * stripes, each one a {@link BoundedCache} with its own lock, so threads validating different documents seldom wait
+ * for each other. Every stripe is bounded, and values longer than {@link #MAX_VALUE_LENGTH} chars are never cached.
+ * A document may add at most {@link #MAX_ADMISSIONS_PER_DOCUMENT} outcomes, so a document with lots of unique values
+ * neither flushes the outcomes of ordinary documents, nor pays for caching values which are never seen again.
+ * <p>
+ * A cached outcome is counted against the step budget of the document just as if the value was matched, so whether
+ * a document exceeds its budget does not depend on what other documents have been validated before it.
+ * Only matchers without any other side effects may be cached, e.g. not {@link ValidatorPatterns#IMAGE_DATA_URL}.
+ * Nothing is cached for settings {@link ValidationSettings#withSharedCaches(boolean) without shared caches}.
+ */
+public final class AttributeDecisionCache {
+
+    static final int MAX_VALUE_LENGTH = 256;
+    static final int MAX_ADMISSIONS_PER_DOCUMENT = 256;
+
+    private static final int STRIPES = 16;
+
+    public static final AttributeDecisionCache SHARED = new AttributeDecisionCache(8192);
+
+    private final List<BoundedCache<Key, Boolean>> stripes;
+
+    AttributeDecisionCache(int maxEntries) {
+        int maxEntriesPerStripe = Math.max(1, maxEntries / STRIPES);
+        this.stripes = new ArrayList<>(STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new BoundedCache<>(maxEntriesPerStripe, (long) maxEntriesPerStripe * MAX_VALUE_LENGTH, (key, allowed) -> key.value.length()));
+        }
+    }
+
+    /**
+     * @return true if the value is matched by the matcher, either cached or by matching it now
+     */
+    boolean matches(ValueMatcher matcher, String elementName, String attributeName, String value) {
+        if (value.length() > MAX_VALUE_LENGTH || !ValidationContext.settings().sharedCaches) {
+            return matcher.test(value);
+        }
+        Key key = new Key(matcher, elementName, attributeName, value);
+        BoundedCache<Key, Boolean> stripe = stripes.get((key.hash ^ (key.hash >>> 16)) & (STRIPES - 1));
+        Boolean cached = stripe.get(key);
+        if (cached != null) {
+            ValueMatcher.countMatchSteps(value);
+            return cached;
+        }
+        boolean matches = matcher.test(value);
+        if (ValidationContext.admitAttributeDecision()) {
+            stripe.put(key, matches);
+        }
+        return matches;
+    }
+
+    public long hitCount() {
+        long hitCount = 0;
+        for (BoundedCache<Key, Boolean> stripe : stripes) {
+            hitCount += stripe.hitCount();
+        }
+        return hitCount;
+    }
+
+    public long missCount() {
+        long missCount = 0;
+        for (BoundedCache<Key, Boolean> stripe : stripes) {
+            missCount += stripe.missCount();
+        }
+        return missCount;
+    }
+
+    public long evictionCount() {
+        long evictionCount = 0;
+        for (BoundedCache<Key, Boolean> stripe : stripes) {
+            evictionCount += stripe.evictionCount();
+        }
+        return evictionCount;
+    }
+
+    public int size() {
+        int size = 0;
+        for (BoundedCache<Key, Boolean> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the total length of the cached values, in chars
+     */
+    public long weight() {
+        long weight = 0;
+        for (BoundedCache<Key, Boolean> stripe : stripes) {
+            weight += stripe.weight();
+        }
+        return weight;
+    }
+
+    public void clear() {
+        for (BoundedCache<Key, Boolean> stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    private static final class Key {
+        final ValueMatcher matcher;
+        final String elementName;
+        final String attributeName;
+        final String value;
+        final int hash;
+
+        Key(ValueMatcher matcher, String elementName, String attributeName, String value) {
+            this.matcher = matcher;
+            this.elementName = elementName;
+            this.attributeName = attributeName;
+            this.value = value;
+            this.hash = 31 * (31 * (31 * System.identityHashCode(matcher) + elementName.hashCode()) + attributeName.hashCode()) + value.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && matcher == other.matcher && elementName.equals(other.elementName)
+                && attributeName.equals(other.attributeName) && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Least recently used cache, bounded both by number of entries and by the total weight of the entries.
+ * Entries are evicted, least recently used first, until both bounds are satisfied. An entry weighing more than
+ * the maximum weight is never cached.
+ */
+public final class BoundedCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToLongBiFunction<? super K, ? super V> weigher;
+    private final LinkedHashMap<K, Weighted<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public BoundedCache(int maxEntries, long maxWeight, ToLongBiFunction<? super K, ? super V> weigher) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1, was " + maxEntries);
+        }
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("maxWeight must be at least 1, was " + maxWeight);
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return the cached value, or {@code null} if there is none
+     */
+    public synchronized V get(K key) {
+        Weighted<V> entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        long entryWeight = weigher.applyAsLong(key, value);
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        Weighted<V> replaced = entries.put(key, new Weighted<>(value, entryWeight));
+        if (replaced != null) {
+            weight -= replaced.weight;
+        }
+        weight += entryWeight;
+
+        Iterator<Map.Entry<K, Weighted<V>>> leastRecentlyUsed = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || weight > maxWeight) {
+            weight -= leastRecentlyUsed.next().getValue().weight;
+            leastRecentlyUsed.remove();
+            evictionCount++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    public synchronized long evictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    private static final class Weighted<V> {
+        final V value;
+        final long weight;
+
+        Weighted(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The bytes of a buffer as chars, one char for each byte, without decoding them. Ascii chars in UTF-8 are the same
+ * bytes as in ascii, and the bytes of other chars are never ascii, so the ascii in a UTF-8 document can be read
+ * through this view, in the same order, without decoding the document first.
+ */
+public final class ByteChars implements CharSequence {
+
+    private final ByteBuffer bytes;
+    private final int start;
+    private final int length;
+
+    public ByteChars(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * A view of the bytes from the position to the limit of the buffer. The position of the buffer is not changed.
+     */
+    public ByteChars(ByteBuffer bytes) {
+        this(bytes, bytes.position(), bytes.remaining());
+    }
+
+    private ByteChars(ByteBuffer bytes, int start, int length) {
+        this.bytes = bytes;
+        this.start = start;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return (char) (bytes.get(start + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", length " + length);
+        }
+        return new ByteChars(bytes, start + from, to - from);
+    }
+
+    @Override
+    public String toString() {
+        final byte[] copy = new byte[length];
+        for (int i = 0; i < length; i++) {
+            copy[i] = bytes.get(start + i);
+        }
+        return new String(copy, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+/**
+ * Compares everything appended to it with an expected String, instead of keeping it. Stops comparing at the first difference,
+ * so rendering a document which differs early costs no more than rendering to nowhere.
+ */
+public final class ComparingAppendable implements Appendable {
+
+    private String expected;
+    private int position;
+    private boolean differs;
+
+    public ComparingAppendable(String expected) {
+        this.expected = expected;
+    }
+
+    /**
+     * Start over, comparing with another String.
+     */
+    void reset(String expected) {
+        this.expected = expected;
+        this.position = 0;
+        this.differs = false;
+    }
+
+    @Override
+    public ComparingAppendable append(CharSequence csq) {
+        CharSequence chars = csq != null ? csq : "null";
+        return append(chars, 0, chars.length());
+    }
+
+    @Override
+    public ComparingAppendable append(CharSequence csq, int start, int end) {
+        if (differs) {
+            return this;
+        }
+        CharSequence chars = csq != null ? csq : "null";
+        int length = end - start;
+        if (length > expected.length() - position) {
+            differs = true;
+        } else if (chars instanceof String) {
+            differs = !expected.regionMatches(position, (String) chars, start, length);
+        } else {
+            for (int i = 0; i < length && !differs; i++) {
+                differs = expected.charAt(position + i) != chars.charAt(start + i);
+            }
+        }
+        position += length;
+        return this;
+    }
+
+    @Override
+    public ComparingAppendable append(char c) {
+        if (!differs) {
+            differs = position >= expected.length() || expected.charAt(position) != c;
+            position++;
+        }
+        return this;
+    }
+
+    /**
+     * @return true if everything appended so far is exactly the expected String
+     */
+    public boolean isEqualToExpected() {
+        return !differs && position == expected.length();
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+/**
+ * Linear scanning of the css in a style-element. Gives the same result as these regexes, but without backtracking,
+ * so the time is always proportional to the length of the css:
+ * <ul>
+ * <li>the whole css: {@code (?:([\.\#\-\w\s\: \[\],]+)\s*\{([^}]+)\}\s*)+}</li>
+ * <li>selector and content: {@code ([\.\#\-\w\s\: \[\],]+)\s*\{([^}]+)\}\s*}</li>
+ * <li>property and value: {@code \s*([\w- ]*)\:([\w\d\. \,\%\#\-\:\"\'\(\)\!\\]*)\;}</li>
+ * </ul>
+ */
+final class CssScanner {
+
+    private CssScanner() {}
+
+    /**
+     * Same as {@code completeCssPattern.matcher(css).matches()}.
+     */
+    static boolean isCompleteCss(CharSequence css) {
+        final int length = css.length();
+        int start = 0;
+        while (true) {
+            final int selectorEnd = skipSelectorChars(css, start);
+            if (selectorEnd == start || selectorEnd == length || css.charAt(selectorEnd) != '{') {
+                return false;
+            }
+            final int contentEnd = indexOf(css, '}', selectorEnd + 1);
+            if (contentEnd < 0 || contentEnd == selectorEnd + 1) {
+                return false;
+            }
+            if (skipWhitespace(css, contentEnd + 1) == length) {
+                return true;
+            }
+            // Whitespace after '}' may be part of the next selector
+            start = contentEnd + 1;
+        }
+    }
+
+    /**
+     * Same as {@code find()} with {@code selectorAndContentPattern}, where {@link #selector()} is group 1 and {@link #content()} is group 2.
+     */
+    static final class Rules {
+        private final CharSequence css;
+        private int position;
+        private int selectorStart, selectorEnd, contentEnd;
+
+        Rules(CharSequence css) {
+            this.css = css;
+        }
+
+        boolean find() {
+            final int length = css.length();
+            int start = position;
+            while (start < length) {
+                final int end = skipSelectorChars(css, start);
+                if (end > start && end < length && css.charAt(end) == '{') {
+                    final int close = indexOf(css, '}', end + 1);
+                    if (close < 0) {
+                        break;
+                    } else if (close > end + 1) {
+                        selectorStart = start;
+                        selectorEnd = end;
+                        contentEnd = close;
+                        position = skipWhitespace(css, close + 1);
+                        return true;
+                    }
+                }
+                // Every start before 'end' gives the same selector, and fails the same way
+                start = Math.max(end, start + 1);
+            }
+            position = length;
+            return false;
+        }
+
+        String selector() {
+            return css.subSequence(selectorStart, selectorEnd).toString();
+        }
+
+        int selectorStart() {
+            return selectorStart;
+        }
+
+        String content() {
+            return css.subSequence(selectorEnd + 1, contentEnd).toString();
+        }
+
+        int contentStart() {
+            return selectorEnd + 1;
+        }
+    }
+
+    /**
+     * Same as {@code find()} with {@code propertyValuePattern}, where {@link #property()} is group 1 and {@link #value()} is group 2.
+     */
+    static final class Declarations {
+        private final CharSequence content;
+        private int position;
+        private int propertyStart, colon, semicolon;
+
+        Declarations(CharSequence content) {
+            this.content = content;
+        }
+
+        boolean find() {
+            final int length = content.length();
+            int start = position;
+            while (start < length) {
+                final int propertyStart = skipWhitespace(content, start);
+                final int colon = skipPropertyChars(content, propertyStart);
+                if (colon == length || content.charAt(colon) != ':') {
+                    // Every start before 'colon' ends the property at the same char
+                    start = Math.max(colon, start + 1);
+                    continue;
+                }
+                final int semicolon = skipValueChars(content, colon + 1);
+                if (semicolon == length || content.charAt(semicolon) != ';') {
+                    // Every start before 'semicolon' ends the value at the same char
+                    start = semicolon;
+                    continue;
+                }
+                this.propertyStart = propertyStart;
+                this.colon = colon;
+                this.semicolon = semicolon;
+                position = semicolon + 1;
+                return true;
+            }
+            position = length;
+            return false;
+        }
+
+        String property() {
+            return content.subSequence(propertyStart, colon).toString();
+        }
+
+        int propertyStart() {
+            return propertyStart;
+        }
+
+        String value() {
+            return content.subSequence(colon + 1, semicolon).toString();
+        }
+    }
+
+    private static int indexOf(CharSequence s, char c, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(CharSequence s, int from) {
+        int i = from;
+        while (i < s.length() && isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipSelectorChars(CharSequence s, int from) {
+        int i = from;
+        while (i < s.length() && isSelectorChar(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipPropertyChars(CharSequence s, int from) {
+        int i = from;
+        while (i < s.length() && isPropertyChar(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipValueChars(CharSequence s, int from) {
+        int i = from;
+        while (i < s.length() && isValueChar(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * {@code \s}
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    /**
+     * {@code \w}
+     */
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * {@code [\.\#\-\w\s\: \[\],]}
+     */
+    private static boolean isSelectorChar(char c) {
+        return isWordChar(c) || isWhitespace(c) || c == '.' || c == '#' || c == '-' || c == ':' || c == '[' || c == ']' || c == ',';
+    }
+
+    /**
+     * {@code [\w- ]}
+     */
+    private static boolean isPropertyChar(char c) {
+        return isWordChar(c) || c == '-' || c == ' ';
+    }
+
+    /**
+     * {@code [\w\d\. \,\%\#\-\:\"\'\(\)\!\\]}
+     */
+    private static boolean isValueChar(char c) {
+        switch (c) {
+            case '.': case ' ': case ',': case '%': case '#': case '-': case ':': case '"': case '\'': case '(': case ')': case '!': case '\\':
+                return true;
+            default:
+                return isWordChar(c);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+public final class DefaultExecutor {
+
+    private static final Executor EXECUTOR = create();
+
+    private DefaultExecutor() {}
+
+    /**
+     * A virtual thread per task when running on Java 21 or newer, and {@link ForkJoinPool#commonPool()} otherwise.
+     * The library is compiled for Java 8, so the virtual thread executor is looked up by reflection.
+     */
+    public static Executor get() {
+        return EXECUTOR;
+    }
+
+    private static Executor create() {
+        try {
+            Method newVirtualThreadPerTaskExecutor = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Before Java 21, or virtual threads are not available (e.g. preview on Java 19 and 20)
+            return ForkJoinPool.commonPool();
+        }
+    }
+}
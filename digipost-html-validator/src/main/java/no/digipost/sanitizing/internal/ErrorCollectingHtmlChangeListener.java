@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import no.digipost.sanitizing.exception.HTMLValidationException;
+import no.digipost.sanitizing.exception.ValidationError;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import org.owasp.html.HtmlChangeListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final public class ErrorCollectingHtmlChangeListener implements HtmlChangeListener<List<String>> {
+
+	private final List<ValidationError> errorCollector;
+	private int maxErrors;
+
+	/**
+	 * @param maxErrors the number of errors to collect before giving up the validation by throwing {@link HTMLValidationException}
+	 */
+	ErrorCollectingHtmlChangeListener(int maxErrors) {
+		if (maxErrors < 1) {
+			throw new IllegalArgumentException("maxErrors must be at least 1, was " + maxErrors);
+		}
+		this.errorCollector = new ArrayList<>();
+		this.maxErrors = maxErrors;
+	}
+
+	/**
+	 * Forget the errors collected so far, to validate another document with the same listener.
+	 * The exceptions already thrown keep their own copy of the errors.
+	 */
+	void reset(int maxErrors) {
+		if (maxErrors < 1) {
+			throw new IllegalArgumentException("maxErrors must be at least 1, was " + maxErrors);
+		}
+		this.errorCollector.clear();
+		this.maxErrors = maxErrors;
+	}
+
+	@Override
+	public void discardedTag(List<String> context, String elementName) {
+		ValidationContext.metrics().violation(elementName, null);
+		add(ValidationError.html(ValidationError.Code.ILLEGAL_TAG, elementName));
+	}
+
+	@Override
+	public void discardedAttributes(List<String> context, String tagName, String... attributeNames) {
+		ValidationMetrics metrics = ValidationContext.metrics();
+		for (String attributeName : attributeNames) {
+			metrics.violation(tagName, attributeName);
+		}
+		add(ValidationError.html(ValidationError.Code.ILLEGAL_ATTRIBUTES, tagName, attributeNames));
+	}
+
+	private void add(ValidationError error) {
+		errorCollector.add(error);
+		if (errorCollector.size() >= maxErrors) {
+			throw HTMLValidationException.ofErrors(errorCollector);
+		}
+	}
+
+	public boolean hasErrors() {
+		return !errorCollector.isEmpty();
+	}
+
+
+	public int getNumberOfErrors() {
+		return errorCollector.size();
+	}
+
+	public List<ValidationError> getErrors() {
+		return this.errorCollector;
+	}
+}
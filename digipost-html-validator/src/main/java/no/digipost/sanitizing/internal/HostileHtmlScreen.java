@@ -0,0 +1,433 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import no.digipost.sanitizing.exception.HTMLValidationException;
+import no.digipost.sanitizing.exception.ValidationError;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import no.digipost.sanitizing.metrics.ValidationPhase;
+import org.owasp.html.PolicyFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Reads html once, without parsing it, looking for what the policies of {@link ApiHtmlValidatorPolicy} never accept:
+ * {@code <script>}, {@code <iframe>} and {@code <object>} tags, {@code on*} event handler attributes,
+ * {@code javascript:} in {@code href}, {@code src} and {@code background}, and images with nothing but a
+ * {@code javascript:} or {@code http(s):} source.
+ * <p>
+ * Only what is surely a tag is screened: comments, quoted attribute values and the content of {@code <style>} and
+ * {@code <title>} are skipped, and the screen gives up, finding nothing, as soon as it reads anything it is not sure
+ * how the sanitizer reads, like unquoted values containing quotes. A document the screen rejects is always rejected
+ * by the sanitizer too. The sanitizer finds the same error, unless it stops at an error earlier in the document,
+ * and it may find more illegal attributes on the same tag.
+ */
+public final class HostileHtmlScreen {
+
+    private static final int MAX_TAG_NAME = 16;
+
+    private static final Set<String> HOSTILE_ELEMENTS = new HashSet<>(Arrays.asList("script", "iframe", "object"));
+
+    private static final Set<String> URL_ATTRIBUTES = new HashSet<>(Arrays.asList("href", "src", "background"));
+
+    /**
+     * Allowed raw text elements, whose content is skipped.
+     */
+    private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<>(Arrays.asList("style", "title"));
+
+    /**
+     * Other raw text elements. They are not allowed, so the screen just gives up at them.
+     */
+    private static final Set<String> OTHER_RAW_TEXT_ELEMENTS = new HashSet<>(Arrays.asList(
+        "textarea", "xmp", "noembed", "noframes", "noscript", "listing", "plaintext", "comment"));
+
+    /**
+     * Elements the sanitizer drops when they are left without (valid) attributes, in which case it reports the element
+     * instead of the attributes. Only images with nothing but a source are screened.
+     */
+    private static final Set<String> DROPPED_WITHOUT_ATTRIBUTES = new HashSet<>(Arrays.asList("img", "font"));
+
+    private final CharSequence html;
+    private final int length;
+    private int position;
+
+    // The start tag being read
+    private final List<String> screenedAttributes = new ArrayList<>();
+    private final List<String> hostileAttributes = new ArrayList<>();
+    private boolean hostileImageSource;
+
+    /**
+     * Screens the html, if the policy is one of our own.
+     *
+     * @return the first error found, or {@code null} if nothing is found or the policy is not ours
+     */
+    public static ValidationError screen(CharSequence html, PolicyFactory policy) {
+        if (ApiHtmlValidatorPolicy.preprocessorOf(policy).isPresent()) {
+            return new HostileHtmlScreen(html).scan();
+        }
+        return null;
+    }
+
+    /**
+     * Same as {@link #screen(CharSequence, PolicyFactory)}, reporting the time spent and what is found to the metrics.
+     *
+     * @throws HTMLValidationException with the error found, if any
+     */
+    public static void check(CharSequence html, PolicyFactory policy, ValidationMetrics metrics) throws HTMLValidationException {
+        final long start = metrics != ValidationMetrics.NO_OP ? System.nanoTime() : 0;
+        final ValidationError error = screen(html, policy);
+        if (metrics != ValidationMetrics.NO_OP) {
+            metrics.phase(ValidationPhase.PRE_SCREEN, System.nanoTime() - start);
+            if (error != null && error.getAttributes().isEmpty()) {
+                metrics.violation(error.getElement(), null);
+            } else if (error != null) {
+                for (String attribute : error.getAttributes()) {
+                    metrics.violation(error.getElement(), attribute);
+                }
+            }
+        }
+        if (error != null) {
+            throw HTMLValidationException.ofErrors(singletonList(error));
+        }
+    }
+
+    private HostileHtmlScreen(CharSequence html) {
+        this.html = html;
+        this.length = html.length();
+    }
+
+    private ValidationError scan() {
+        while ((position = indexOf('<', position)) >= 0) {
+            position++;
+            if (position >= length) {
+                return null;
+            }
+            final char c = html.charAt(position);
+            if (isAsciiLetter(c)) {
+                final String name = tagName();
+                if (name == null || !attributes(name, true)) {
+                    return null;
+                }
+                final ValidationError error = hostile(name);
+                if (error != null) {
+                    return error;
+                }
+                if (OTHER_RAW_TEXT_ELEMENTS.contains(name) || (RAW_TEXT_ELEMENTS.contains(name) && !skipRawText(name))) {
+                    return null;
+                }
+            } else if (c == '/') {
+                position++;
+                if (position >= length || !isAsciiLetter(html.charAt(position))) {
+                    return null;
+                }
+                final String name = tagName();
+                if (name == null || !attributes(name, false)) {
+                    return null;
+                }
+            } else if (c == '!' && startsWith("!--", position)) {
+                position += 3;
+                if (!skipPastCommentEnd()) {
+                    return null;
+                }
+            } else if (c == '!' || c == '?') {
+                // Doctypes and processing instructions, skipped up to the first >
+                position++;
+                if (position >= length || !isAsciiLetter(html.charAt(position)) || !skipPast('>')) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the tag name starting at the position, and leaves the position right after it.
+     *
+     * @return the name in lower case, or {@code null} if it is too long to be interesting, has other chars than ascii
+     *         letters and digits, or the html ends
+     */
+    private String tagName() {
+        final int start = position;
+        char c;
+        while (position < length && !isEndOfTagName(c = html.charAt(position))) {
+            if (position - start == MAX_TAG_NAME || !isAsciiLetterOrDigit(c)) {
+                return null;
+            }
+            position++;
+        }
+        return position < length ? asciiLowerCase(start, position) : null;
+    }
+
+    /**
+     * Reads the attributes of a tag, up to and including the {@code >} ending the tag. Attributes of start tags of
+     * allowed elements are screened.
+     *
+     * @return false if the html ends, or the screen is not sure how the sanitizer reads the attributes
+     */
+    private boolean attributes(String elementName, boolean startTag) {
+        final boolean screen = startTag && ApiHtmlValidatorPolicy.allowsElement(elementName);
+        screenedAttributes.clear();
+        hostileAttributes.clear();
+        hostileImageSource = false;
+        boolean withValue = false;
+        boolean withoutValue = false;
+        int count = 0;
+        while (true) {
+            skipWhitespace();
+            if (position >= length) {
+                return false;
+            }
+            char c = html.charAt(position);
+            if (c == '>' || (c == '/' && startsWith("/>", position))) {
+                position += c == '>' ? 1 : 2;
+                // An image with other attributes is kept, and the source reported as an illegal attribute
+                hostileImageSource = hostileImageSource && count == 1;
+                return true;
+            } else if (c == '/') {
+                return false;
+            }
+            count++;
+
+            final int nameStart = position;
+            while (position < length && !isEndOfAttributeName(c = html.charAt(position))) {
+                if (c == '"' || c == '\'' || c == '<' || !isPrintableAscii(c)) {
+                    return false;
+                }
+                position++;
+            }
+            final int nameEnd = position;
+            if (nameEnd == nameStart) {
+                return false;
+            }
+            int valueStart = -1;
+            int valueEnd = -1;
+            skipWhitespace();
+            if (position < length && html.charAt(position) == '=') {
+                position++;
+                skipWhitespace();
+                if (position >= length) {
+                    return false;
+                }
+                c = html.charAt(position);
+                if (c == '"' || c == '\'') {
+                    valueStart = position + 1;
+                    valueEnd = indexOf(c, valueStart);
+                    if (valueEnd < 0) {
+                        return false;
+                    }
+                    position = valueEnd + 1;
+                    if (position < length && !isWhitespace(html.charAt(position)) && html.charAt(position) != '>' && html.charAt(position) != '/') {
+                        return false;
+                    }
+                } else if (c == '>') {
+                    return false;
+                } else {
+                    valueStart = position;
+                    while (position < length && !isWhitespace(c = html.charAt(position)) && c != '>') {
+                        if (c == '"' || c == '\'' || c == '<' || c == '=' || c == '`' || !isPrintableAscii(c)) {
+                            return false;
+                        }
+                        position++;
+                    }
+                    valueEnd = position;
+                }
+            }
+            withValue |= valueStart >= 0;
+            withoutValue |= valueStart < 0;
+            if (screen && (withValue && withoutValue || !screenAttribute(elementName, nameStart, nameEnd, valueStart, valueEnd))) {
+                // The sanitizer may pair names and values differently when attributes with and without values are mixed
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return false if the screen is not sure how the sanitizer reads the attribute
+     */
+    private boolean screenAttribute(String elementName, int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        final boolean eventHandler = nameEnd - nameStart >= 2 && startsWithIgnoreCase("on", nameStart, nameEnd);
+        final boolean url = !eventHandler && isUrlAttribute(nameStart, nameEnd);
+        if (!eventHandler && !url) {
+            return true;
+        }
+        for (int i = nameStart; i < nameEnd; i++) {
+            if (!isAsciiLetterOrDigit(html.charAt(i)) && html.charAt(i) != '-' && html.charAt(i) != '_') {
+                return false;
+            }
+        }
+        final String name = asciiLowerCase(nameStart, nameEnd);
+        if (screenedAttributes.contains(name)) {
+            // Which of the duplicates the sanitizer keeps is not screened
+            return false;
+        }
+        screenedAttributes.add(name);
+
+        final boolean javascript = url && valueStart >= 0 && startsWithIgnoreCase("javascript:", valueStart, valueEnd);
+        if ("img".equals(elementName)) {
+            hostileImageSource = hostileImageSource || ("src".equals(name) && valueStart >= 0 && (javascript
+                || startsWithIgnoreCase("http://", valueStart, valueEnd) || startsWithIgnoreCase("https://", valueStart, valueEnd)));
+        } else if (!DROPPED_WITHOUT_ATTRIBUTES.contains(elementName) && (eventHandler || javascript)) {
+            hostileAttributes.add(name);
+        }
+        return true;
+    }
+
+    private ValidationError hostile(String elementName) {
+        if (HOSTILE_ELEMENTS.contains(elementName) || hostileImageSource) {
+            return ValidationError.html(ValidationError.Code.ILLEGAL_TAG, elementName);
+        } else if (!hostileAttributes.isEmpty()) {
+            return ValidationError.html(ValidationError.Code.ILLEGAL_ATTRIBUTES, elementName, hostileAttributes.toArray(new String[0]));
+        }
+        return null;
+    }
+
+    /**
+     * Skips the content of a raw text element, and its end tag: {@code </name} followed by whitespace, / or >.
+     *
+     * @return false if the end tag is not found
+     */
+    private boolean skipRawText(String elementName) {
+        while ((position = indexOf('<', position)) >= 0) {
+            final int nameStart = position + 2;
+            final int nameEnd = nameStart + elementName.length();
+            if (nameEnd < length && html.charAt(position + 1) == '/' && startsWithIgnoreCase(elementName, nameStart, nameEnd)
+                    && isEndOfTagName(html.charAt(nameEnd))) {
+                position = nameEnd;
+                return attributes(elementName, false);
+            }
+            position++;
+        }
+        return false;
+    }
+
+    private boolean skipPast(char c) {
+        final int index = indexOf(c, position);
+        position = index + 1;
+        return index >= 0;
+    }
+
+    private boolean skipPastCommentEnd() {
+        int dashes = 0;
+        for (; position < length; position++) {
+            final char c = html.charAt(position);
+            if (c == '>' && dashes >= 2) {
+                position++;
+                return true;
+            }
+            dashes = c == '-' ? dashes + 1 : 0;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (position < length && isWhitespace(html.charAt(position))) {
+            position++;
+        }
+    }
+
+    private int indexOf(char c, int from) {
+        if (html instanceof String) {
+            return ((String) html).indexOf(c, from);
+        }
+        for (int i = from; i < length; i++) {
+            if (html.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWith(String prefix, int at) {
+        if (length - at < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (html.charAt(at + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param lowerCasePrefix ascii in lower case
+     */
+    private boolean startsWithIgnoreCase(String lowerCasePrefix, int start, int end) {
+        if (end - start < lowerCasePrefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < lowerCasePrefix.length(); i++) {
+            if (asciiLowerCase(html.charAt(start + i)) != lowerCasePrefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isUrlAttribute(int start, int end) {
+        for (String attribute : URL_ATTRIBUTES) {
+            if (end - start == attribute.length() && startsWithIgnoreCase(attribute, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String asciiLowerCase(int start, int end) {
+        final char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = asciiLowerCase(html.charAt(start + i));
+        }
+        return new String(chars);
+    }
+
+    private static char asciiLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static boolean isEndOfTagName(char c) {
+        return isWhitespace(c) || c == '/' || c == '>';
+    }
+
+    private static boolean isEndOfAttributeName(char c) {
+        return isWhitespace(c) || c == '=' || c == '>' || c == '/';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return isAsciiLetter(c) || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isPrintableAscii(char c) {
+        return c > ' ' && c < 0x7f;
+    }
+
+    /**
+     * The whitespace separating attributes for the sanitizer. Carriage return and form feed are not among them.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n';
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import no.digipost.sanitizing.exception.HTMLValidationException;
+import no.digipost.sanitizing.exception.ValidationError;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Validates {@code data:image/(gif|jpg|jpeg|png);base64,...} urls in one pass, without building the decoded image.
+ * <p>
+ * The data is first percent-decoded and then decoded with the forgiving-base64 decode of the WHATWG spec, like a
+ * browser does it: ascii whitespace is skipped, there may be one or two '=' at the end if they make the length a multiple
+ * of four, and else only the base64 alphabet is allowed. Note that the sanitizer percent-encodes whitespace in
+ * urls before the policy sees them, so multiline base64 comes as {@code %0a} and {@code %09}.
+ * <p>
+ * The image is counted in the limits of the {@link ValidationContext}, and the first bytes are checked against the
+ * media type if {@link ValidationSettings#withImageMagicBytesCheck(boolean) enabled}.
+ */
+final class ImageDataUrl {
+
+    private static final String DATA_IMAGE = "data:image/";
+    private static final String BASE64 = ";base64,";
+    private static final int MAGIC_BYTES_LENGTH = 8;
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] GIF = {'G', 'I', 'F', '8'};
+    private static final byte[] JPEG = {(byte) 0xff, (byte) 0xd8, (byte) 0xff};
+
+    private ImageDataUrl() {}
+
+    static boolean isValid(String url) {
+        ValidationContext.countImage();
+        if (!url.startsWith(DATA_IMAGE)) {
+            return false;
+        }
+        int typeEnd = url.indexOf(BASE64, DATA_IMAGE.length());
+        if (typeEnd < 0) {
+            return false;
+        }
+        final byte[] magicBytes;
+        switch (url.substring(DATA_IMAGE.length(), typeEnd)) {
+            case "png": magicBytes = PNG; break;
+            case "gif": magicBytes = GIF; break;
+            case "jpg": case "jpeg": magicBytes = JPEG; break;
+            default: return false;
+        }
+
+        final ValidationSettings limits = ValidationContext.settings();
+        final long maxBytes = Math.min(limits.maxImageBytes, ValidationContext.remainingImageBytes());
+        final byte[] firstBytes = limits.checkImageMagicBytes ? new byte[MAGIC_BYTES_LENGTH] : null;
+        long dataChars = 0;
+        int paddingChars = 0;
+        int bits = 0;
+        int bitCount = 0;
+        int decodedFirstBytes = 0;
+
+        for (int i = typeEnd + BASE64.length(); i < url.length(); i++) {
+            int c = url.charAt(i);
+            if (c == '%' && i + 2 < url.length() && isHex(url.charAt(i + 1)) && isHex(url.charAt(i + 2))) {
+                c = Character.digit(url.charAt(i + 1), 16) << 4 | Character.digit(url.charAt(i + 2), 16);
+                i += 2;
+            }
+            if (isAsciiWhitespace(c)) {
+                continue;
+            } else if (c == '=') {
+                if (++paddingChars > 2) {
+                    return false;
+                }
+                continue;
+            }
+            int value = base64Value(c);
+            if (value < 0 || paddingChars > 0) {
+                return false;
+            }
+            dataChars++;
+            if ((dataChars & 3) == 0 && dataChars / 4 * 3 > maxBytes) {
+                throw tooLarge(limits, maxBytes);
+            }
+            if (firstBytes != null && decodedFirstBytes < MAGIC_BYTES_LENGTH) {
+                bits = (bits << 6 | value) & 0x3fff;
+                bitCount += 6;
+                if (bitCount >= 8) {
+                    bitCount -= 8;
+                    firstBytes[decodedFirstBytes++] = (byte) (bits >> bitCount);
+                }
+            }
+        }
+
+        if ((paddingChars > 0 && (dataChars + paddingChars) % 4 != 0) || dataChars % 4 == 1) {
+            return false;
+        }
+        final long bytes = dataChars / 4 * 3 + Math.max(0, dataChars % 4 - 1);
+        if (bytes > maxBytes) {
+            throw tooLarge(limits, maxBytes);
+        }
+        if (firstBytes != null && !startsWith(firstBytes, decodedFirstBytes, magicBytes)) {
+            return false;
+        }
+        ValidationContext.countImageBytes(bytes);
+        return true;
+    }
+
+    private static HTMLValidationException tooLarge(ValidationSettings limits, long maxBytes) {
+        if (maxBytes == limits.maxImageBytes) {
+            return HTMLValidationException.ofErrors(singletonList(ValidationError.limit(ValidationError.Code.IMAGE_TOO_LARGE, limits.maxImageBytes)));
+        } else {
+            return HTMLValidationException.ofErrors(singletonList(ValidationError.limit(ValidationError.Code.IMAGES_TOO_LARGE, limits.maxImageBytesPerDocument)));
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int base64Value(int c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        } else if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        } else if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        } else if (c == '+') {
+            return 62;
+        } else if (c == '/') {
+            return 63;
+        } else {
+            return -1;
+        }
+    }
+
+    private static boolean isHex(char c) {
+        return Character.digit(c, 16) >= 0 && c < 128;
+    }
+
+    /**
+     * Tab, line feed, form feed, carriage return and space
+     */
+    private static boolean isAsciiWhitespace(int c) {
+        return c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == ' ';
+    }
+}
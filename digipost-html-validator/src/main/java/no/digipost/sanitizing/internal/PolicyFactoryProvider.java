@@ -43,7 +43,22 @@ public final class PolicyFactoryProvider {
         }
     }
 
+    /**
+     * @return {@code V1} or {@code V2} for the policies returned by {@link #getPolicyFactory(Instant)}, and {@code custom} for any other
+     */
+    public static String policyVersion(PolicyFactory policy) {
+        return ApiHtmlValidatorPolicy.versionOf(policy);
+    }
+
     public static ErrorCollectingHtmlChangeListener errorCollector() {
-        return new ErrorCollectingHtmlChangeListener();
+        return errorCollector(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxErrors the number of errors after which the validation is stopped by throwing
+     *                  {@link no.digipost.sanitizing.exception.HTMLValidationException HTMLValidationException}
+     */
+    public static ErrorCollectingHtmlChangeListener errorCollector(int maxErrors) {
+        return new ErrorCollectingHtmlChangeListener(maxErrors);
     }
 }
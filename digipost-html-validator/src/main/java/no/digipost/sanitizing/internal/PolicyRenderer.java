@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import org.owasp.html.Handler;
+import org.owasp.html.HtmlSanitizer;
+import org.owasp.html.HtmlStreamEventProcessor;
+import org.owasp.html.HtmlStreamRenderer;
+import org.owasp.html.PolicyFactory;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+public final class PolicyRenderer {
+
+    private PolicyRenderer() {}
+
+    /**
+     * Sanitizes html according to the given policy, and renders the result to an Appendable. The output is the same as from
+     * {@link PolicyFactory#sanitize(String, org.owasp.html.HtmlChangeListener, Object)}, but for our own policies
+     * it is written directly to {@code out} instead of being built as a String first. Either way, {@code out} is flushed
+     * when done if it is {@link Flushable}.
+     *
+     * @throws UncheckedIOException if {@code out} fails
+     */
+    public static void render(String html, PolicyFactory policy, ErrorCollectingHtmlChangeListener errorCollector, Appendable out) {
+        Optional<HtmlStreamEventProcessor> preprocessor = ApiHtmlValidatorPolicy.preprocessorOf(policy);
+        if (preprocessor.isPresent()) {
+            HtmlStreamRenderer renderer = HtmlStreamRenderer.create(out, PolicyRenderer::rethrow, Handler.DO_NOTHING);
+            HtmlSanitizer.sanitize(html, policy.apply(renderer, errorCollector, null), preprocessor.get());
+        } else {
+            try {
+                out.append(policy.sanitize(html, errorCollector, null));
+                // The renderer of our own policies flushes when the document is closed, so only this is left to flush
+                if (out instanceof Flushable) {
+                    ((Flushable) out).flush();
+                }
+            } catch (IOException e) {
+                rethrow(e);
+            }
+        }
+    }
+
+    private static void rethrow(IOException e) {
+        throw new UncheckedIOException(e);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+/**
+ * The output buffer, error collector and comparison used to sanitize one document, kept for each thread so that the
+ * next document sanitized on the same thread can use them again instead of allocating new ones. Used when
+ * {@link ValidationSettings#withReusableBuffers(boolean) reusable buffers} are turned on:
+ * <pre>
+ * try (SanitizerBuffers buffers = SanitizerBuffers.acquire()) {
+ *     ...
+ * }
+ * </pre>
+ * The buffers are only kept between documents on threads which are reused, i.e. pooled platform threads, and not on
+ * e.g. a virtual thread per document. An output buffer grown larger than {@link #MAX_RETAINED_CHARS} by a huge document
+ * is not kept, and the document and its errors are not referenced after {@link #close()}.
+ */
+public final class SanitizerBuffers implements AutoCloseable {
+
+    static final int MAX_RETAINED_CHARS = 1024 * 1024;
+
+    private static final ThreadLocal<SanitizerBuffers> CURRENT = ThreadLocal.withInitial(SanitizerBuffers::new);
+
+    private StringBuilder output;
+    private ErrorCollectingHtmlChangeListener errorCollector;
+    private ComparingAppendable comparison;
+    private boolean inUse;
+
+    /**
+     * @return the buffers of this thread, or new buffers if the buffers of this thread are already in use,
+     *         i.e. when sanitizing from within sanitizing
+     */
+    public static SanitizerBuffers acquire() {
+        SanitizerBuffers buffers = CURRENT.get();
+        if (buffers.inUse) {
+            return new SanitizerBuffers();
+        }
+        buffers.inUse = true;
+        return buffers;
+    }
+
+    private SanitizerBuffers() {
+    }
+
+    /**
+     * @return an empty buffer with room for at least {@code capacity} chars
+     */
+    public StringBuilder output(int capacity) {
+        if (output == null) {
+            output = new StringBuilder(capacity);
+        } else {
+            output.setLength(0);
+            output.ensureCapacity(capacity);
+        }
+        return output;
+    }
+
+    /**
+     * @return an error collector without errors, see {@link PolicyFactoryProvider#errorCollector(int)}
+     */
+    public ErrorCollectingHtmlChangeListener errorCollector(int maxErrors) {
+        if (errorCollector == null) {
+            errorCollector = PolicyFactoryProvider.errorCollector(maxErrors);
+        } else {
+            errorCollector.reset(maxErrors);
+        }
+        return errorCollector;
+    }
+
+    /**
+     * @return an appendable comparing with {@code expected}, see {@link ComparingAppendable}
+     */
+    public ComparingAppendable comparison(String expected) {
+        if (comparison == null) {
+            comparison = new ComparingAppendable(expected);
+        } else {
+            comparison.reset(expected);
+        }
+        return comparison;
+    }
+
+    @Override
+    public void close() {
+        if (output != null) {
+            if (output.capacity() > MAX_RETAINED_CHARS) {
+                output = null;
+            } else {
+                output.setLength(0);
+            }
+        }
+        if (errorCollector != null) {
+            errorCollector.reset(1);
+        }
+        if (comparison != null) {
+            comparison.reset(null);
+        }
+        inUse = false;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import org.owasp.html.HtmlSanitizer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The text allowed in the slots of a {@link no.digipost.sanitizing.HtmlTemplate}: text which the sanitizer leaves as
+ * it is wherever it is put as plain text, and which can not change how the html around it is read.
+ * <p>
+ * Markup, entity references and the chars the sanitizer writes as entities are not allowed, nor are control chars,
+ * surrogates (chars outside the basic multilingual plane are written as entities) and {@code U+FE60} and above, which
+ * the sanitizer also writes as entities. <code>&#123;</code> is not allowed, as the sanitizer splits <code>&#123;&#123;</code>.
+ */
+public final class SlotText {
+
+    private static final boolean[] ALLOWED_ASCII = new boolean[128];
+
+    static {
+        for (char c = ' '; c < 0x7f; c++) {
+            ALLOWED_ASCII[c] = "\"&'+<=>@`{".indexOf(c) < 0;
+        }
+        ALLOWED_ASCII['\t'] = true;
+        ALLOWED_ASCII['\n'] = true;
+        ALLOWED_ASCII['\r'] = true;
+    }
+
+    /**
+     * Elements whose content is not read as html. The content of these is not plain text.
+     */
+    private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<>(Arrays.asList(
+        "style", "title", "script", "textarea", "xmp", "iframe", "noembed", "noframes", "noscript", "plaintext", "listing", "comment"));
+
+    private SlotText() {}
+
+    public static boolean isAllowed(char c) {
+        if (c < 0x80) {
+            return ALLOWED_ASCII[c];
+        }
+        return c >= 0xa0 && c < 0xfe60 && c != 0x1fef && !Character.isSurrogate(c);
+    }
+
+    /**
+     * @return whether {@code bytes[from]} to {@code bytes[to - 1]} is valid UTF-8 of allowed chars, with at least one
+     *         char which is not whitespace
+     */
+    public static boolean isAllowed(byte[] bytes, int from, int to) {
+        boolean onlyWhitespace = true;
+        for (int i = from; i < to; i++) {
+            final byte b = bytes[i];
+            if (b < 0) {
+                return isAllowed(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+            } else if (!ALLOWED_ASCII[b]) {
+                return false;
+            }
+            onlyWhitespace = onlyWhitespace && isWhitespace((char) b);
+        }
+        return !onlyWhitespace;
+    }
+
+    /**
+     * Malformed UTF-8 is decoded to {@code U+FFFD}, which is not allowed.
+     */
+    private static boolean isAllowed(String text) {
+        boolean onlyWhitespace = true;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (!isAllowed(c)) {
+                return false;
+            }
+            onlyWhitespace = onlyWhitespace && isWhitespace(c);
+        }
+        return !onlyWhitespace;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Reads the html like the sanitizer does, looking for the given texts.
+     *
+     * @return the texts which are not found in plain text, e.g. because they are in a tag or comment, or in the
+     *         content of a style or title element
+     */
+    public static List<String> notInText(String html, List<String> texts) {
+        final List<String> notFound = new ArrayList<>(texts);
+        HtmlSanitizer.sanitize(html, new HtmlSanitizer.Policy() {
+            private String rawTextElement;
+
+            @Override
+            public void openDocument() {
+            }
+
+            @Override
+            public void closeDocument() {
+            }
+
+            @Override
+            public void openTag(String elementName, List<String> attrs) {
+                if (rawTextElement == null && RAW_TEXT_ELEMENTS.contains(elementName)) {
+                    rawTextElement = elementName;
+                }
+            }
+
+            @Override
+            public void closeTag(String elementName) {
+                if (elementName.equals(rawTextElement)) {
+                    rawTextElement = null;
+                }
+            }
+
+            @Override
+            public void text(String text) {
+                if (rawTextElement == null) {
+                    notFound.removeIf(text::contains);
+                }
+            }
+        });
+        return notFound;
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import no.digipost.sanitizing.exception.CSSValidationException;
+import no.digipost.sanitizing.exception.ValidationError;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import no.digipost.sanitizing.metrics.ValidationPhase;
+import org.owasp.html.HtmlStreamEventProcessor;
+import org.owasp.html.HtmlStreamEventReceiver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static no.digipost.sanitizing.internal.ApiHtmlValidatorPolicy.CSS_PROPERTY_WHITELIST;
+
+/**
+ * Denne klassen tar av seg sanitering av innholdet i style-elementet. Saniteringen som blir utført er blant annet basert på denne cheat sheeten fra OWASP:
+ * https://github.com/OWASP/CheatSheetSeries/blob/master/cheatsheets/Cross_Site_Scripting_Prevention_Cheat_Sheet.md
+ * <p>
+ * Angånde HTML entity encoding: OWASP foreslår å encode både ' og ".
+ * Hvis dette blir håndhevet medfører det imidlertid problemer siden browsere ikke takler html entity encoding i css-en.
+ * Vi har derfor valgt å ikke entity encode disse to tegnene. Risikoen for å tillatte de er begrenset, da det må brukes i kombinasjon
+ * med andre spesialtegn som vi html entity encoder. En ny vurdering rundt html entity encoding burde imidlertid tas om man beslutter å åpne opp html-innsending for alle/majoriteten av virksomheter.
+ * Eksempler på når det kan være behov for ' eller " er ved bruk av propertyen font-family eller content.
+ * <p>
+ * For å benytte seg av HTML i utgangspunktet krever vi at virksomhetsinnstillingen `brev.kanSendeHtml` er aktivert for virksomheten.
+ * Det stilles noen krav til CSS-en:
+ * Må oppfylle regex-ene beskrevet i {@link CssScanner}.
+ * Declaration kan ikke inneholde ord definert i cssBlacklist i {@link ValidationSettings}
+ * Note: Kommentarer i css-en er ikke tillatt.
+ */
+final class StyleElementPreprocessor implements HtmlStreamEventProcessor {
+    @Override
+    public HtmlStreamEventReceiver wrap(HtmlStreamEventReceiver receiver) {
+        return new StyleElementReceiver(receiver);
+    }
+
+    public static class StyleElementReceiver implements HtmlStreamEventReceiver {
+
+        private static final String STYLE_TAG = "style";
+
+        private static final Logger log = LoggerFactory.getLogger(no.digipost.sanitizing.internal.StyleElementPreprocessor.StyleElementReceiver.class);
+
+        private final HtmlStreamEventReceiver receiver;
+        private final Consumer<String> receiverText;
+        private boolean inStyleTag;
+
+
+        StyleElementReceiver(HtmlStreamEventReceiver receiver) {
+            this.receiver = receiver;
+            this.receiverText = receiver::text;
+        }
+
+        /**
+         * @param css The content of the \<style>-element (pure css)
+         * @return sanitized version of content
+         */
+        public static String validateAndSanitizeCss(String css) {
+            validateCss(css);
+
+            StringBuilder sanitizedCss = new StringBuilder(css.length());
+            writeHtmlEscaped(css, sanitizedCss::append);
+            return sanitizedCss.length() == css.length() ? css : sanitizedCss.toString();
+        }
+
+        static void validateCss(String css) {
+            List<ValidationError> validationErrors = new ArrayList<>();
+
+            validateCss(css, validationErrors);
+
+            if (!validationErrors.isEmpty()) {
+                throw CSSValidationException.ofErrors(validationErrors);
+            }
+        }
+
+        static void validateCss(String css, List<ValidationError> validationErrors) {
+            final String cssStriped = css.trim();
+            final int cssOffset = leadingWhitespace(css);
+
+            if (!CssScanner.isCompleteCss(cssStriped) && cssStriped.length() > 0) {
+                validationErrors.add(ValidationError.css(ValidationError.Code.INVALID_CSS, null, null, null, cssOffset));
+            }
+
+            CssScanner.Rules selectorAndContent = new CssScanner.Rules(cssStriped);
+
+            while (selectorAndContent.find()) {
+
+                final String rawSelector = selectorAndContent.selector();
+                final String rawContent = selectorAndContent.content();
+                final String selector = rawSelector.trim();
+                final String selectorContent = rawContent.trim();
+                final int selectorOffset = cssOffset + selectorAndContent.selectorStart() + leadingWhitespace(rawSelector);
+                log.debug("Parsing selectorContent for selector {}", selector);
+
+                if (selector.length() == 0) {
+                    log.warn("Could not match css-selector, but scanner matched anyways. Something might be wrong with the css scanner. Style-element content: {}", cssStriped);
+                    validationErrors.add(ValidationError.css(ValidationError.Code.CSS_SELECTOR_NOT_FOUND, null, null, null, selectorOffset));
+                } else if (containsBlacklistedWord(selectorContent)) {
+                    validationErrors.add(ValidationError.css(ValidationError.Code.CSS_ILLEGAL_WORDS, selector, null, null, selectorOffset));
+                } else {
+                    final int contentOffset = cssOffset + selectorAndContent.contentStart() + leadingWhitespace(rawContent);
+                    validateDeclarations(selector, selectorContent, contentOffset, validationErrors);
+                }
+            }
+        }
+
+        /**
+         * The number of chars {@link String#trim()} removes from the start of the text.
+         */
+        private static int leadingWhitespace(String text) {
+            int i = 0;
+            while (i < text.length() && text.charAt(i) <= ' ') {
+                i++;
+            }
+            return i;
+        }
+
+        private static boolean containsBlacklistedWord(String content) {
+            return ValidationContext.settings().cssBlacklist.containsAny(content);
+        }
+
+        private static void validateDeclarations(String selector, String stripedContent, int contentOffset, List<ValidationError> validationErrors) {
+
+            CssScanner.Declarations declaration = new CssScanner.Declarations(stripedContent);
+
+            //The alternative to this boolean is to also validate that the declarations cover the whole selectorContent (concluded that it was more error prone)
+            boolean matcherDidNotFindDeclaration = true;
+
+            while (declaration.find()) {
+                matcherDidNotFindDeclaration = false;
+                final String property = declaration.property().trim();
+                final String value = declaration.value().trim();
+                final int declarationOffset = contentOffset + declaration.propertyStart();
+                log.debug("Processing declaration:  {}: {}", property, value);
+
+
+                if (CSS_PROPERTY_WHITELIST.containsKey(property)) {
+                    boolean isNotOK = !CSS_PROPERTY_WHITELIST.get(property).test(value.toLowerCase());
+                    if (isNotOK) {
+                        log.warn("Value '{}' is not allowed for property '{}'.", value, property);
+                        validationErrors.add(ValidationError.css(ValidationError.Code.CSS_VALUE_NOT_ALLOWED, selector, property, value, declarationOffset));
+                    }
+                } else {
+                    log.debug("Property '{}' is not allowed in style-element", property);
+                    validationErrors.add(ValidationError.css(ValidationError.Code.CSS_PROPERTY_NOT_ALLOWED, selector, property, null, declarationOffset));
+                }
+            }
+
+            if (matcherDidNotFindDeclaration && stripedContent.length() > 0) {
+                if (!stripedContent.endsWith(";")) {
+                    validationErrors.add(ValidationError.css(ValidationError.Code.CSS_DECLARATION_NOT_TERMINATED, selector, null, stripedContent, contentOffset));
+                } else {
+                    log.warn("Found no match in property and value scanner, even though it should. Something might be wrong with the scanner. Content: {}", stripedContent);
+                    validationErrors.add(ValidationError.css(ValidationError.Code.CSS_MALFORMED_DECLARATION, selector, null, stripedContent, contentOffset));
+                }
+            }
+        }
+
+        /**
+         * Writes the text to {@code out} in one pass, with &amp;, &lt;, &gt; and / html escaped. Each char is escaped
+         * on its own, so the escaped chars are never escaped again. The parts of the text between escaped chars are
+         * written as they are, and a text with nothing to escape is written as is, without copying it.
+         */
+        static void writeHtmlEscaped(String text, Consumer<String> out) {
+            int unwritten = 0;
+            for (int i = 0; i < text.length(); i++) {
+                final String escaped = htmlEscaped(text.charAt(i));
+                if (escaped != null) {
+                    if (i > unwritten) {
+                        out.accept(text.substring(unwritten, i));
+                    }
+                    out.accept(escaped);
+                    unwritten = i + 1;
+                }
+            }
+            if (unwritten == 0) {
+                out.accept(text);
+            } else if (unwritten < text.length()) {
+                out.accept(text.substring(unwritten));
+            }
+        }
+
+        private static String htmlEscaped(char c) {
+            switch (c) {
+                case '&': return "&amp;";
+                case '<': return "&lt;";
+                case '>': return "&gt;";
+                case '/': return "&#x2F;";
+                default: return null;
+            }
+        }
+
+        @Override
+        public void openDocument() {
+            receiver.openDocument();
+            inStyleTag = false;
+        }
+
+        @Override
+        public void closeDocument() {
+            receiver.closeDocument();
+        }
+
+        @Override
+        public void openTag(String elementName, List<String> attrs) {
+            receiver.openTag(elementName, attrs);
+            inStyleTag = STYLE_TAG.equals(elementName);
+            if (inStyleTag) {
+                ValidationContext.countStyleElement();
+            }
+        }
+
+        @Override
+        public void closeTag(String elementName) {
+            receiver.closeTag(elementName);
+            inStyleTag = false;
+        }
+
+        @Override
+        public void text(String text) {
+            if (inStyleTag) {
+                final ValidationMetrics metrics = ValidationContext.metrics();
+                final long start = metrics != ValidationMetrics.NO_OP ? System.nanoTime() : 0;
+                try {
+                    StylesheetCache.SHARED.validateAndWriteEscaped(text, receiverText);
+                } finally {
+                    if (metrics != ValidationMetrics.NO_OP) {
+                        metrics.phase(ValidationPhase.CSS_VALIDATION, System.nanoTime() - start);
+                    }
+                }
+            } else {
+                receiver.text(text);
+            }
+        }
+    }
+
+}
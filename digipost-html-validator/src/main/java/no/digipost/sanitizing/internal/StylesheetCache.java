@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import no.digipost.sanitizing.exception.CSSValidationException;
+import no.digipost.sanitizing.exception.ValidationError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static no.digipost.sanitizing.internal.StyleElementPreprocessor.StyleElementReceiver.validateCss;
+import static no.digipost.sanitizing.internal.StyleElementPreprocessor.StyleElementReceiver.writeHtmlEscaped;
+
+/**
+ * Cache of validated {@code <style>} elements, shared by all documents. Letters from the same sender usually have the
+ * very same stylesheet, so it is validated and escaped for the first letter only, and the outcome, either the escaped
+ * css or the errors, is reused for the next ones.
+ * <p>
+ * Stylesheets are cached by their content and the blacklisted words of the settings they were validated with. The
+ * cache is bounded both by the number of stylesheets and by their total length, and stylesheets longer than
+ * {@link #MAX_STYLESHEET_LENGTH} chars are never cached.
+ * <p>
+ * The steps a stylesheet was counted when it was validated are counted again each time it is found in the cache,
+ * so whether a document exceeds its step budget does not depend on what other documents have been validated before it.
+ * Stylesheets are only cached while a document is validated, as the steps are not counted otherwise, and not for
+ * settings {@link ValidationSettings#withSharedCaches(boolean) without shared caches}.
+ */
+public final class StylesheetCache {
+
+    static final int MAX_STYLESHEET_LENGTH = 256 * 1024;
+
+    public static final StylesheetCache SHARED = new StylesheetCache(1024, 8L * 1024 * 1024);
+
+    private final BoundedCache<Key, ValidatedStylesheet> cache;
+
+    StylesheetCache(int maxEntries, long maxWeightChars) {
+        this.cache = new BoundedCache<>(maxEntries, maxWeightChars, (key, stylesheet) -> key.css.length() + stylesheet.weight(key.css));
+    }
+
+    /**
+     * Validate the css, and write it to {@code out} with &amp;, &lt;, &gt; and / html escaped. Css which is not cached
+     * is escaped straight into {@code out}, see {@link StyleElementPreprocessor.StyleElementReceiver#writeHtmlEscaped}.
+     *
+     * @throws CSSValidationException if the css is not valid
+     */
+    void validateAndWriteEscaped(String css, Consumer<String> out) {
+        final long stepsBefore = ValidationContext.matchSteps();
+        if (stepsBefore < 0 || !ValidationContext.settings().sharedCaches || css.length() > MAX_STYLESHEET_LENGTH) {
+            validateCss(css);
+            writeHtmlEscaped(css, out);
+            return;
+        }
+        final Key key = new Key(ValidationContext.settings().cssBlacklist, css);
+        ValidatedStylesheet stylesheet = cache.get(key);
+        if (stylesheet == null) {
+            stylesheet = validate(css, stepsBefore);
+            cache.put(key, stylesheet);
+        } else {
+            ValidationContext.countMatchSteps(stylesheet.matchSteps);
+        }
+        if (stylesheet.errors != null) {
+            throw CSSValidationException.ofErrors(stylesheet.errors);
+        }
+        out.accept(stylesheet.escaped);
+    }
+
+    private static ValidatedStylesheet validate(String css, long stepsBefore) {
+        final List<ValidationError> errors = new ArrayList<>();
+        validateCss(css, errors);
+        final long matchSteps = ValidationContext.matchSteps() - stepsBefore;
+        if (!errors.isEmpty()) {
+            return new ValidatedStylesheet(null, Collections.unmodifiableList(errors), matchSteps);
+        }
+        final StringBuilder escaped = new StringBuilder(css.length());
+        writeHtmlEscaped(css, escaped::append);
+        return new ValidatedStylesheet(escaped.length() == css.length() ? css : escaped.toString(), null, matchSteps);
+    }
+
+    public long hitCount() {
+        return cache.hitCount();
+    }
+
+    public long missCount() {
+        return cache.missCount();
+    }
+
+    public long evictionCount() {
+        return cache.evictionCount();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return the total length of the cached stylesheets, in chars
+     */
+    public long weight() {
+        return cache.weight();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    private static final class ValidatedStylesheet {
+        final String escaped;
+        final List<ValidationError> errors;
+        final long matchSteps;
+
+        ValidatedStylesheet(String escaped, List<ValidationError> errors, long matchSteps) {
+            this.escaped = escaped;
+            this.errors = errors;
+            this.matchSteps = matchSteps;
+        }
+
+        /**
+         * The escaped css is only counted when it is not the very same string as the css it was validated from.
+         */
+        long weight(String css) {
+            long weight = errors != null ? 64L * errors.size() : 0;
+            return escaped != null && escaped != css ? weight + escaped.length() : weight;
+        }
+    }
+
+    private static final class Key {
+        final WordScanner cssBlacklist;
+        final String css;
+        final int hash;
+
+        Key(WordScanner cssBlacklist, String css) {
+            this.cssBlacklist = cssBlacklist;
+            this.css = css;
+            this.hash = 31 * System.identityHashCode(cssBlacklist) + css.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && cssBlacklist == other.cssBlacklist && css.equals(other.css);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
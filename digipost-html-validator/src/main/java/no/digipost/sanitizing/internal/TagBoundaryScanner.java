@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Finds the places in html, as it arrives piece by piece, where a tag has just ended and the html parser is back in
+ * plain text. Validating the html up to such a place gives the same tags, attributes and style-elements as
+ * validating the whole document does, up to that place. Comments, doctypes, quoted attribute values and the
+ * content of raw text elements like {@code <style>} never contain such a place, and neither does anything after a
+ * tag the scanner is not sure how the parser reads, so the places found are a safe subset.
+ * <p>
+ * The scanner keeps its state between calls to {@link #scan(CharSequence, int, int)}, so the html can be split anywhere.
+ */
+public final class TagBoundaryScanner {
+
+    private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<>(Arrays.asList(
+        "script", "style", "textarea", "title", "xmp", "iframe", "noembed", "noframes", "noscript", "listing", "comment"));
+
+    private static final int MAX_TAG_NAME = 16;
+
+    private enum State {
+        DATA, LT, LT_SLASH, LT_BANG, LT_BANG_DASH, COMMENT, BOGUS,
+        TAG_NAME, ATTRIBUTES, AFTER_EQUALS, DOUBLE_QUOTED, SINGLE_QUOTED, UNQUOTED,
+        RAW_TEXT, PLAINTEXT
+    }
+
+    private State state = State.DATA;
+    private final StringBuilder tagName = new StringBuilder(MAX_TAG_NAME);
+    private boolean endTag;
+    private boolean uncertain;
+    private int commentDashes;
+    private String rawTextElement;
+    private int rawTextEndMatched;
+    private int lastBoundary;
+
+    /**
+     * Scans {@code html[from, to)}, which must follow right after what was scanned before.
+     */
+    public void scan(CharSequence html, int from, int to) {
+        for (int i = from; i < to; i++) {
+            next(html.charAt(i), i);
+        }
+    }
+
+    /**
+     * @return the index right after the last tag found to end in plain text, or 0 if none is found yet
+     */
+    public int lastBoundary() {
+        return lastBoundary;
+    }
+
+    private void next(char c, int index) {
+        switch (state) {
+            case DATA:
+                if (c == '<') {
+                    state = State.LT;
+                }
+                break;
+            case LT:
+                if (isAsciiLetter(c)) {
+                    startTag(c, false);
+                } else if (c == '/') {
+                    state = State.LT_SLASH;
+                } else if (c == '!') {
+                    state = State.LT_BANG;
+                } else if (c == '?') {
+                    state = State.BOGUS;
+                } else if (c != '<') {
+                    state = State.DATA;
+                }
+                break;
+            case LT_SLASH:
+                if (isAsciiLetter(c)) {
+                    startTag(c, true);
+                } else {
+                    state = c == '>' ? State.DATA : State.BOGUS;
+                }
+                break;
+            case LT_BANG:
+                state = c == '-' ? State.LT_BANG_DASH : c == '>' ? State.DATA : State.BOGUS;
+                break;
+            case LT_BANG_DASH:
+                if (c == '-') {
+                    state = State.COMMENT;
+                    commentDashes = 0;
+                } else {
+                    state = c == '>' ? State.DATA : State.BOGUS;
+                }
+                break;
+            case COMMENT:
+                if (c == '>' && commentDashes >= 2) {
+                    state = State.DATA;
+                }
+                commentDashes = c == '-' ? commentDashes + 1 : 0;
+                break;
+            case BOGUS:
+                if (c == '>') {
+                    state = State.DATA;
+                }
+                break;
+            case TAG_NAME:
+                if (c == '>') {
+                    endOfTag(index);
+                } else if (isWhitespace(c) || c == '/') {
+                    state = State.ATTRIBUTES;
+                } else if (tagName.length() < MAX_TAG_NAME) {
+                    tagName.append(Character.toLowerCase(c));
+                } else {
+                    uncertain = true;
+                }
+                break;
+            case ATTRIBUTES:
+                if (c == '>') {
+                    endOfTag(index);
+                } else if (c == '=') {
+                    state = State.AFTER_EQUALS;
+                } else if (c == '"' || c == '\'' || c == '<') {
+                    uncertain = true;
+                }
+                break;
+            case AFTER_EQUALS:
+                if (c == '"') {
+                    state = State.DOUBLE_QUOTED;
+                } else if (c == '\'') {
+                    state = State.SINGLE_QUOTED;
+                } else if (c == '>') {
+                    uncertain = true;
+                    endOfTag(index);
+                } else if (!isWhitespace(c)) {
+                    state = State.UNQUOTED;
+                }
+                break;
+            case DOUBLE_QUOTED:
+                if (c == '"') {
+                    state = State.ATTRIBUTES;
+                }
+                break;
+            case SINGLE_QUOTED:
+                if (c == '\'') {
+                    state = State.ATTRIBUTES;
+                }
+                break;
+            case UNQUOTED:
+                if (c == '>') {
+                    endOfTag(index);
+                } else if (isWhitespace(c)) {
+                    state = State.ATTRIBUTES;
+                } else if (c == '"' || c == '\'' || c == '<' || c == '=' || c == '`') {
+                    uncertain = true;
+                }
+                break;
+            case RAW_TEXT:
+                rawText(c);
+                break;
+            case PLAINTEXT:
+                break;
+        }
+    }
+
+    private void startTag(char first, boolean isEndTag) {
+        state = State.TAG_NAME;
+        tagName.setLength(0);
+        tagName.append(Character.toLowerCase(first));
+        endTag = isEndTag;
+    }
+
+    private void endOfTag(int index) {
+        final String name = tagName.toString();
+        if (!endTag && "plaintext".equals(name)) {
+            state = State.PLAINTEXT;
+        } else if (!endTag && RAW_TEXT_ELEMENTS.contains(name)) {
+            state = State.RAW_TEXT;
+            rawTextElement = name;
+            rawTextEndMatched = 0;
+        } else {
+            state = State.DATA;
+            if (!uncertain) {
+                lastBoundary = index + 1;
+            }
+        }
+        uncertain = false;
+    }
+
+    /**
+     * Looks for {@code </name} followed by whitespace, / or >, which ends the raw text.
+     */
+    private void rawText(char c) {
+        final int nameEnd = 2 + rawTextElement.length();
+        if (rawTextEndMatched == nameEnd) {
+            if (isWhitespace(c) || c == '/' || c == '>') {
+                tagName.setLength(0);
+                tagName.append(rawTextElement);
+                endTag = true;
+                // The end tag of a raw text element is not used as a boundary, in case the parser reads it differently
+                uncertain = true;
+                if (c == '>') {
+                    endOfTag(0);
+                } else {
+                    state = State.ATTRIBUTES;
+                }
+                return;
+            }
+            rawTextEndMatched = 0;
+        }
+        if (rawTextEndMatched == 0) {
+            rawTextEndMatched = c == '<' ? 1 : 0;
+        } else if (rawTextEndMatched == 1) {
+            rawTextEndMatched = c == '/' ? 2 : c == '<' ? 1 : 0;
+        } else if (Character.toLowerCase(c) == rawTextElement.charAt(rawTextEndMatched - 2)) {
+            rawTextEndMatched++;
+        } else {
+            rawTextEndMatched = c == '<' ? 1 : 0;
+        }
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
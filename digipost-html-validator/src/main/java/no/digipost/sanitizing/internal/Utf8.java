@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public final class Utf8 {
+
+    private static final int CHUNK_BYTES = 8192;
+
+    private Utf8() {}
+
+    /**
+     * Decodes the bytes from the position to the limit of the buffer, the same way as
+     * {@code new String(bytes, StandardCharsets.UTF_8)}. The position of the buffer is not changed.
+     * <p>
+     * A heap buffer is decoded straight from its array. Other buffers, e.g. direct or memory mapped ones, are copied
+     * and decoded a few kilobytes at a time, so nothing but the decoded text is allocated in proportion to the size of
+     * the buffer. Each chunk is decoded with {@link String#String(byte[], int, int, java.nio.charset.Charset) new String},
+     * which decodes runs of ascii many bytes at a time, instead of with a {@link java.nio.charset.CharsetDecoder CharsetDecoder},
+     * which reads a direct buffer one byte at a time.
+     */
+    public static String decode(ByteBuffer bytes) {
+        return decode(bytes, CHUNK_BYTES);
+    }
+
+    static String decode(ByteBuffer bytes, int chunkBytes) {
+        final ByteBuffer in = bytes.duplicate();
+        if (in.hasArray()) {
+            return new String(in.array(), in.arrayOffset() + in.position(), in.remaining(), StandardCharsets.UTF_8);
+        }
+        final StringBuilder decoded = new StringBuilder(in.remaining());
+        final byte[] chunk = new byte[Math.min(chunkBytes, in.remaining())];
+        while (in.hasRemaining()) {
+            final int read = Math.min(chunk.length, in.remaining());
+            in.get(chunk, 0, read);
+            final int end = in.hasRemaining() ? charBoundary(chunk, read) : read;
+            // Called as Buffer, as ByteBuffer.position(int) does not exist on Java 8
+            ((Buffer) in).position(in.position() - (read - end));
+            decoded.append(new String(chunk, 0, end, StandardCharsets.UTF_8));
+        }
+        return decoded.toString();
+    }
+
+    /**
+     * A place to split the bytes near their end, so that no char is split between two chunks: after the last ascii byte,
+     * or before the last byte starting a multi-byte char, if one of them is among the last four bytes. As a char is at
+     * most four bytes, the bytes may otherwise be split anywhere, and the chunks are decoded the same as the whole.
+     */
+    static int charBoundary(byte[] bytes, int length) {
+        for (int i = length - 1; i >= Math.max(1, length - 4); i--) {
+            if (bytes[i] >= 0) {
+                return i + 1;
+            } else if ((bytes[i] & 0xC0) == 0xC0) {
+                return i;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import no.digipost.sanitizing.exception.HTMLValidationException;
+import no.digipost.sanitizing.exception.ValidationError;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Settings and counters for the document currently being validated on this thread. The policies are shared by all documents,
+ * so anything counted per document is kept here while the document is sanitized.
+ * <p>
+ * Open it around the sanitizing of one document, and close it when done:
+ * <pre>
+ * try (ValidationContext context = ValidationContext.open(settings)) {
+ *     ...
+ * }
+ * </pre>
+ */
+public final class ValidationContext implements AutoCloseable {
+
+    private static final ThreadLocal<ValidationContext> CURRENT = new ThreadLocal<>();
+
+    private final ValidationContext previous;
+    private final ValidationSettings settings;
+    private long matchSteps;
+    private long imageBytes;
+    private int styleElements;
+    private int images;
+    private int cachedAttributeDecisions;
+
+    public static ValidationContext open(ValidationSettings settings) {
+        ValidationContext context = new ValidationContext(CURRENT.get(), settings);
+        CURRENT.set(context);
+        return context;
+    }
+
+    private ValidationContext(ValidationContext previous, ValidationSettings settings) {
+        this.previous = previous;
+        this.settings = settings;
+    }
+
+    /**
+     * @return the settings of the document being validated on this thread, or {@link ValidationSettings#DEFAULTS}
+     */
+    static ValidationSettings settings() {
+        ValidationContext context = CURRENT.get();
+        return context != null ? context.settings : ValidationSettings.DEFAULTS;
+    }
+
+    /**
+     * Count steps against the budget of the document being validated on this thread, if any.
+     *
+     * @throws HTMLValidationException if the budget of the document is used up
+     */
+    static void countMatchSteps(long steps) {
+        ValidationContext context = CURRENT.get();
+        if (context != null) {
+            context.matchSteps += steps;
+            if (context.matchSteps > context.settings.maxMatchSteps) {
+                throw HTMLValidationException.ofErrors(singletonList(
+                    ValidationError.limit(ValidationError.Code.MATCH_STEPS_EXCEEDED, context.settings.maxMatchSteps)));
+            }
+        }
+    }
+
+    /**
+     * @return true if the document being validated on this thread may add another outcome to the {@link AttributeDecisionCache}
+     */
+    static boolean admitAttributeDecision() {
+        ValidationContext context = CURRENT.get();
+        return context == null || context.cachedAttributeDecisions++ < AttributeDecisionCache.MAX_ADMISSIONS_PER_DOCUMENT;
+    }
+
+    /**
+     * @return the steps counted so far for the document being validated on this thread, or -1 if there is none
+     */
+    static long matchSteps() {
+        ValidationContext context = CURRENT.get();
+        return context != null ? context.matchSteps : -1;
+    }
+
+    /**
+     * @return how many more bytes of images the document being validated on this thread may contain
+     */
+    static long remainingImageBytes() {
+        ValidationContext context = CURRENT.get();
+        return context != null ? context.settings.maxImageBytesPerDocument - context.imageBytes : Long.MAX_VALUE;
+    }
+
+    static void countImageBytes(long bytes) {
+        ValidationContext context = CURRENT.get();
+        if (context != null) {
+            context.imageBytes += bytes;
+        }
+    }
+
+    static void countStyleElement() {
+        ValidationContext context = CURRENT.get();
+        if (context != null) {
+            context.styleElements++;
+        }
+    }
+
+    static void countImage() {
+        ValidationContext context = CURRENT.get();
+        if (context != null) {
+            context.images++;
+        }
+    }
+
+    /**
+     * @return the metrics of the document being validated on this thread, or {@link ValidationMetrics#NO_OP}
+     */
+    static ValidationMetrics metrics() {
+        return settings().metrics;
+    }
+
+    public int styleElements() {
+        return styleElements;
+    }
+
+    public int images() {
+        return images;
+    }
+
+    @Override
+    public void close() {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
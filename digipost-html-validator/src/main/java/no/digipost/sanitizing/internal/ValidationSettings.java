@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Limits and other settings for each document, set with the {@code withX} methods of
+ * {@link no.digipost.sanitizing.DigipostValidatingHtmlSanitizer DigipostValidatingHtmlSanitizer}.
+ */
+public final class ValidationSettings {
+
+    private static final WordScanner DEFAULT_CSS_BLACKLIST = new WordScanner(Arrays.asList("javascript", "expression", "url(", "http://", "https://", "/*", "*/"));
+
+    public static final ValidationSettings DEFAULTS = new ValidationSettings(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, false, DEFAULT_CSS_BLACKLIST, ValidationMetrics.NO_OP, false, false, true);
+
+    final long maxMatchSteps;
+    final long maxImageBytes;
+    final long maxImageBytesPerDocument;
+    final boolean checkImageMagicBytes;
+    final WordScanner cssBlacklist;
+    final ValidationMetrics metrics;
+    final boolean reuseBuffers;
+    final boolean preScreen;
+    final boolean sharedCaches;
+
+    private ValidationSettings(long maxMatchSteps, long maxImageBytes, long maxImageBytesPerDocument, boolean checkImageMagicBytes, WordScanner cssBlacklist, ValidationMetrics metrics, boolean reuseBuffers, boolean preScreen, boolean sharedCaches) {
+        this.maxMatchSteps = maxMatchSteps;
+        this.maxImageBytes = maxImageBytes;
+        this.maxImageBytesPerDocument = maxImageBytesPerDocument;
+        this.checkImageMagicBytes = checkImageMagicBytes;
+        this.cssBlacklist = cssBlacklist;
+        this.metrics = metrics;
+        this.reuseBuffers = reuseBuffers;
+        this.preScreen = preScreen;
+        this.sharedCaches = sharedCaches;
+    }
+
+    public ValidationSettings withMaxMatchSteps(long maxMatchSteps) {
+        return new ValidationSettings(atLeastOne("maxMatchSteps", maxMatchSteps), maxImageBytes, maxImageBytesPerDocument, checkImageMagicBytes, cssBlacklist, metrics, reuseBuffers, preScreen, sharedCaches);
+    }
+
+    public ValidationSettings withMaxImageBytes(long maxImageBytes, long maxImageBytesPerDocument) {
+        return new ValidationSettings(maxMatchSteps, atLeastOne("maxImageBytes", maxImageBytes), atLeastOne("maxImageBytesPerDocument", maxImageBytesPerDocument), checkImageMagicBytes, cssBlacklist, metrics, reuseBuffers, preScreen, sharedCaches);
+    }
+
+    public ValidationSettings withImageMagicBytesCheck(boolean checkImageMagicBytes) {
+        return new ValidationSettings(maxMatchSteps, maxImageBytes, maxImageBytesPerDocument, checkImageMagicBytes, cssBlacklist, metrics, reuseBuffers, preScreen, sharedCaches);
+    }
+
+    /**
+     * @param words ascii words, matched ignoring case
+     */
+    public ValidationSettings withCssBlacklistedWords(Collection<String> words) {
+        return new ValidationSettings(maxMatchSteps, maxImageBytes, maxImageBytesPerDocument, checkImageMagicBytes, cssBlacklist.withWords(words), metrics, reuseBuffers, preScreen, sharedCaches);
+    }
+
+    public ValidationSettings withMetrics(ValidationMetrics metrics) {
+        return new ValidationSettings(maxMatchSteps, maxImageBytes, maxImageBytesPerDocument, checkImageMagicBytes, cssBlacklist, metrics, reuseBuffers, preScreen, sharedCaches);
+    }
+
+    public ValidationSettings withReusableBuffers(boolean reuseBuffers) {
+        return new ValidationSettings(maxMatchSteps, maxImageBytes, maxImageBytesPerDocument, checkImageMagicBytes, cssBlacklist, metrics, reuseBuffers, preScreen, sharedCaches);
+    }
+
+    public ValidationSettings withPreScreen(boolean preScreen) {
+        return new ValidationSettings(maxMatchSteps, maxImageBytes, maxImageBytesPerDocument, checkImageMagicBytes, cssBlacklist, metrics, reuseBuffers, preScreen, sharedCaches);
+    }
+
+    /**
+     * @param sharedCaches false to neither use nor fill the caches shared by all documents, {@link AttributeDecisionCache}
+     *                     and {@link StylesheetCache}, e.g. when warming up the validation itself
+     */
+    public ValidationSettings withSharedCaches(boolean sharedCaches) {
+        return new ValidationSettings(maxMatchSteps, maxImageBytes, maxImageBytesPerDocument, checkImageMagicBytes, cssBlacklist, metrics, reuseBuffers, preScreen, sharedCaches);
+    }
+
+    public ValidationMetrics metrics() {
+        return metrics;
+    }
+
+    public boolean reuseBuffers() {
+        return reuseBuffers;
+    }
+
+    public boolean preScreen() {
+        return preScreen;
+    }
+
+    /**
+     * @return a key which is equal to the key of other settings if documents get the same results with both, i.e. if
+     *         the settings differ only by metrics and reuse of buffers. Screened documents get only the first error, so
+     *         the pre-screen is part of the key.
+     */
+    public Object resultKey() {
+        return Arrays.asList(maxMatchSteps, maxImageBytes, maxImageBytesPerDocument, checkImageMagicBytes, cssBlacklist, preScreen);
+    }
+
+    private static long atLeastOne(String name, long value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be at least 1, was " + value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import java.util.regex.Pattern;
+
+import static no.digipost.sanitizing.internal.ValueMatcher.either;
+import static no.digipost.sanitizing.internal.ValueMatcher.linear;
+import static no.digipost.sanitizing.internal.ValueMatcher.regex;
+
+/**
+ * Matchers for attribute and css values. Patterns with nested or repeated groups are hand-coded, as java.util.regex
+ * may backtrack on them in more than linear time, or use one stack frame per character. The regex each of them
+ * replaces is given in the comment above it.
+ */
+final class ValidatorPatterns {
+
+	// The 16 colors defined by the HTML Spec (also used by the CSS Spec)
+	static final ValueMatcher COLOR_NAME = regex("(?:aqua|black|blue|fuchsia|gray|grey|green|lime|maroon|navy|olive|purple|red|silver|teal|white|yellow)");
+	// HTML/CSS Spec allows 3 or 6 digit hex to specify color
+	static final ValueMatcher COLOR_CODE = regex("(?:#(?:[0-9a-fA-F]{3}(?:[0-9a-fA-F]{3})?))");
+
+    static final ValueMatcher NUMBER_OR_PERCENT = regex("[0-9]+%?");
+	static final ValueMatcher DIMENSION = regex("^[0-9]+(%|px|em|rem)?$");
+	// (?:[\p{L}\p{N},'.\s\-_()]|&[0-9]{2};)*
+	static final ValueMatcher PARAGRAPH = linear(ValidatorPatterns::isParagraph);
+	static final ValueMatcher HTML_ID = regex("[a-zA-Z0-9:\\-_.]+");
+
+	// force non-empty with a '+' at the end instead of '*'
+	// [\p{L}\p{N}\s\-_',:\[\]!./\\()&]*
+	static final ValueMatcher HTML_TITLE = linear(ValidatorPatterns::isHtmlTitle);
+	static final ValueMatcher HTML_CLASS = regex("[a-zA-Z0-9\\s,\\-_]+");
+
+	// (?:[\p{L}\p{N}\\.#@$%+&;\-_~,?=/!]+|#(\w)+)
+	static final ValueMatcher ONSITE_URL = linear(ValidatorPatterns::isOnsiteUrl);
+	// \s*(?:(?:ht|f)tps?://|mailto:)[\p{L}\p{N}][\p{L}\p{N}\p{Zs}.#@$%+&;:\-_~,?=/!()]*+\s*
+	static final ValueMatcher OFFSITE_URL = linear(ValidatorPatterns::isOffsiteUrl);
+
+	static final ValueMatcher NUMBER = regex("[+-]?(?:(?:[0-9]+(?:\\.[0-9]*)?)|\\.[0-9]+)");
+
+	static final ValueMatcher NAME = regex("[a-zA-Z0-9\\-_$]+");
+
+	static final ValueMatcher ALIGN = regex("(?i)center|left|right|justify|char");
+
+	// ^(?:0|auto|content|\d*\.?\d+(?:%|px|em|rem|))$
+    static final ValueMatcher FLEX_BASIS = linear(ValidatorPatterns::isFlexBasis);
+
+	static final ValueMatcher VALIGN = regex("(?i)baseline|bottom|middle|top");
+
+	static final ValueMatcher TARGET_BLANK = regex("_blank");
+
+	static final ValueMatcher CSS_TYPE = regex("text/css");
+
+	static final ValueMatcher COLOR_NAME_OR_COLOR_CODE = either(COLOR_NAME, COLOR_CODE);
+
+	static final ValueMatcher ONSITE_OR_OFFSITE_URL = either(ONSITE_URL, OFFSITE_URL);
+
+	// data:image/(gif|jpg|jpeg|png);base64.+ with valid base64, see ImageDataUrl
+	static final ValueMatcher IMAGE_DATA_URL = linear(ImageDataUrl::isValid);
+
+	static final ValueMatcher ONE_CHAR = regex(Pattern.compile(".?", Pattern.DOTALL));
+
+	static final ValueMatcher TYPE_AND_CHARSET = regex("text/html;[ ]*charset=([uU][tT][fF][\\-]?8|[iI][sS][oO]-8859-1)");
+
+	// ([, ;\t]*(width|height|initial-scale|minimum-scale|maximum-scale|user-scalable|target-densityDpi)[ ]{0,3}=[ ]{0,3}(device-width|device-height|device-dpi|yes|no|[0-9.\-]{1,4})){1,6}
+	static final ValueMatcher META_VIEWPORT_VALUES = linear(ValidatorPatterns::isMetaViewportValues);
+
+	private static final String[] META_VIEWPORT_NAMES = {"width", "height", "initial-scale", "minimum-scale", "maximum-scale", "user-scalable", "target-densityDpi"};
+	private static final String[] META_VIEWPORT_KEYWORDS = {"device-width", "device-height", "device-dpi", "yes", "no"};
+	private static final String[] URL_SCHEMES = {"http://", "https://", "ftp://", "ftps://", "mailto:"};
+	private static final String[] FLEX_BASIS_UNITS = {"%", "px", "em", "rem", ""};
+
+
+	static boolean isParagraph(String value) {
+		int i = 0;
+		while (i < value.length()) {
+			int c = value.codePointAt(i);
+			if (isLetterOrNumber(c) || isWhitespace(c) || ",'.-_()".indexOf(c) >= 0) {
+				i += Character.charCount(c);
+			} else if (c == '&' && i + 3 < value.length() && isDigit(value.charAt(i + 1)) && isDigit(value.charAt(i + 2)) && value.charAt(i + 3) == ';') {
+				i += 4;
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean isHtmlTitle(String value) {
+		for (int i = 0; i < value.length(); ) {
+			int c = value.codePointAt(i);
+			if (!(isLetterOrNumber(c) || isWhitespace(c) || "-_',:[]!./\\()&".indexOf(c) >= 0)) {
+				return false;
+			}
+			i += Character.charCount(c);
+		}
+		return true;
+	}
+
+	/**
+	 * The second alternative, {@code #(\w)+}, only matches values the first alternative matches as well.
+	 */
+	static boolean isOnsiteUrl(String value) {
+		for (int i = 0; i < value.length(); ) {
+			int c = value.codePointAt(i);
+			if (!(isLetterOrNumber(c) || "\\.#@$%+&;-_~,?=/!".indexOf(c) >= 0)) {
+				return false;
+			}
+			i += Character.charCount(c);
+		}
+		return !value.isEmpty();
+	}
+
+	static boolean isOffsiteUrl(String value) {
+		int i = skipWhitespace(value, 0);
+		int schemeEnd = -1;
+		for (String scheme : URL_SCHEMES) {
+			if (value.startsWith(scheme, i)) {
+				schemeEnd = i + scheme.length();
+				break;
+			}
+		}
+		if (schemeEnd < 0 || schemeEnd == value.length() || !isLetterOrNumber(value.codePointAt(schemeEnd))) {
+			return false;
+		}
+		i = schemeEnd + Character.charCount(value.codePointAt(schemeEnd));
+		while (i < value.length()) {
+			int c = value.codePointAt(i);
+			if (!(isLetterOrNumber(c) || Character.getType(c) == Character.SPACE_SEPARATOR || ".#@$%+&;:-_~,?=/!()".indexOf(c) >= 0)) {
+				break;
+			}
+			i += Character.charCount(c);
+		}
+		return skipWhitespace(value, i) == value.length();
+	}
+
+	static boolean isFlexBasis(String value) {
+		if (value.equals("0") || value.equals("auto") || value.equals("content")) {
+			return true;
+		}
+		for (String unit : FLEX_BASIS_UNITS) {
+			if (value.endsWith(unit) && isDecimal(value, value.length() - unit.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * {@code \d*\.?\d+} on the first {@code length} chars of the value.
+	 */
+	private static boolean isDecimal(String value, int length) {
+		int i = 0;
+		while (i < length && isDigit(value.charAt(i))) {
+			i++;
+		}
+		if (i == length) {
+			return length > 0;
+		} else if (value.charAt(i) != '.' || i + 1 == length) {
+			return false;
+		}
+		for (i++; i < length; i++) {
+			if (!isDigit(value.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Names, keywords and separators never start with a char which could continue the part before them, so the
+	 * value can be matched left to right without backtracking.
+	 */
+	static boolean isMetaViewportValues(String value) {
+		int i = 0;
+		for (int declarations = 0; declarations < 6; declarations++) {
+			while (i < value.length() && ", ;\t".indexOf(value.charAt(i)) >= 0) {
+				i++;
+			}
+			int name = startsWithOneOf(value, i, META_VIEWPORT_NAMES);
+			if (name < 0) {
+				return false;
+			}
+			i = skipUpTo3Spaces(value, name);
+			if (i == value.length() || value.charAt(i) != '=') {
+				return false;
+			}
+			i = skipUpTo3Spaces(value, i + 1);
+			int keyword = startsWithOneOf(value, i, META_VIEWPORT_KEYWORDS);
+			if (keyword >= 0) {
+				i = keyword;
+			} else {
+				int numberStart = i;
+				while (i < value.length() && i - numberStart < 4 && "0123456789.-".indexOf(value.charAt(i)) >= 0) {
+					i++;
+				}
+				if (i == numberStart) {
+					return false;
+				}
+			}
+			if (i == value.length()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int startsWithOneOf(String value, int from, String[] candidates) {
+		for (String candidate : candidates) {
+			if (value.startsWith(candidate, from)) {
+				return from + candidate.length();
+			}
+		}
+		return -1;
+	}
+
+	private static int skipUpTo3Spaces(String value, int from) {
+		int i = from;
+		while (i < value.length() && i - from < 3 && value.charAt(i) == ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	private static int skipWhitespace(String value, int from) {
+		int i = from;
+		while (i < value.length() && isWhitespace(value.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * {@code [\p{L}\p{N}]}
+	 */
+	private static boolean isLetterOrNumber(int codePoint) {
+		switch (Character.getType(codePoint)) {
+			case Character.UPPERCASE_LETTER:
+			case Character.LOWERCASE_LETTER:
+			case Character.TITLECASE_LETTER:
+			case Character.MODIFIER_LETTER:
+			case Character.OTHER_LETTER:
+			case Character.DECIMAL_DIGIT_NUMBER:
+			case Character.LETTER_NUMBER:
+			case Character.OTHER_NUMBER:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * {@code \s}
+	 */
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || (c >= '\t' && c <= '\r');
+	}
+
+	/**
+	 * {@code [0-9]}
+	 */
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+}
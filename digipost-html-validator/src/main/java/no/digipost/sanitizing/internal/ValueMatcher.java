@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Matches a whole attribute or css value, like {@code pattern.matcher(value).matches()}, in time linear to the
+ * length of the value. Every value is counted against the step budget of the document, see {@link ValidationContext}.
+ * <p>
+ * Only patterns java.util.regex is known to match in linear time (no nested or ambiguous quantifiers) may be given
+ * as a regex. Anything else must be hand-coded, see {@link ValidatorPatterns}.
+ */
+final class ValueMatcher implements Predicate<String> {
+
+    private final Predicate<String> matcher;
+
+    static ValueMatcher regex(String regex) {
+        return regex(Pattern.compile(regex));
+    }
+
+    static ValueMatcher regex(Pattern pattern) {
+        return new ValueMatcher(value -> pattern.matcher(value).matches());
+    }
+
+    static ValueMatcher linear(Predicate<String> matcher) {
+        return new ValueMatcher(matcher);
+    }
+
+    static ValueMatcher either(ValueMatcher a, ValueMatcher b) {
+        return new ValueMatcher(value -> a.matcher.test(value) || b.matcher.test(value));
+    }
+
+    private ValueMatcher(Predicate<String> matcher) {
+        this.matcher = matcher;
+    }
+
+    @Override
+    public boolean test(String value) {
+        countMatchSteps(value);
+        return matcher.test(value);
+    }
+
+    /**
+     * Count the steps of matching the value, without matching it. Used when the outcome is already known, so the
+     * budget of a document does not depend on what has been matched before.
+     */
+    static void countMatchSteps(String value) {
+        ValidationContext.countMatchSteps(value.length() + 1);
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * A few small documents like the ones sent to Digipost, used to warm up the validator. Together they go through
+ * style-elements, style-attributes, tables, lists, links, images inlined as data urls, and both html and css
+ * which is rejected, so that all of the validation is compiled by the JIT.
+ */
+public final class WarmUpCorpus {
+
+    private WarmUpCorpus() {}
+
+    private static final String IMAGE = "data:image/png;base64,"
+        + "iVBORw0KGgoAAAANSUhEUgAAAAUAAAAFCAYAAACNbyblAAAAHElEQVQI12P4//8/w38GIAXDIBKE0DHxg"
+        + "ljNBAAO9TXL0Y4OHwAAAABJRU5ErkJggg==";
+
+    private static final List<String> DOCUMENTS = Arrays.asList(
+        "<!DOCTYPE html>\n"
+            + "<html lang=\"no\">\n"
+            + "<head>\n"
+            + "<meta charset=\"utf-8\">\n"
+            + "<meta name=\"viewport\" content=\"width=device-width, initial-scale=1\">\n"
+            + "<title>Faktura</title>\n"
+            + "<style>\n"
+            + "body { font-family: Arial, Helvetica, sans-serif; margin: 0px; }\n"
+            + "div#header { display: flex; flex-direction: row; justify-content: space-between; gap: 8px; }\n"
+            + ".logo { flex: 1 0 30%; }\n"
+            + "table.lines td { padding: 2px 10px 2px 0; border-bottom: solid 1px #cccccc; text-align: right; }\n"
+            + "h1 span.note { color: rgba(69,164,170,0.12); font-size: 14px; page-break-after: always; }\n"
+            + "</style>\n"
+            + "</head>\n"
+            + "<body>\n"
+            + "<div id=\"header\"><img class=\"logo\" src=\"" + IMAGE + "\" alt=\"Logo\" width=\"5\" height=\"5\">"
+            + "<h1>Faktura <span class=\"note\">nr. 1234</span></h1></div>\n"
+            + "<p>Hei! Her er fakturaen for <abbr title=\"oktober\">okt.</abbr> &amp; <strong>november</strong>.</p>\n"
+            + "<table class=\"lines\"><thead><tr><th>Vare</th><th colspan=\"2\">Pris</th></tr></thead>\n"
+            + "<tbody><tr><td>Strøm</td><td>1 234,50</td><td>kr</td></tr><tr><td>Nettleie</td><td>456,00</td><td>kr</td></tr></tbody></table>\n"
+            + "<ul><li>Forfall: 20.11.</li><li>Kontonummer: 1234.56.78903</li></ul>\n"
+            + "<p style=\"margin-top: 20px; font-weight: bold;\">Se <a href=\"https://www.digipost.no/hjelp\">hjelpesidene</a>.</p>\n"
+            + "</body>\n"
+            + "</html>",
+        "<html><head><style>p { color: red; }\n.a { background: url(https://example.com/a.png); }\n"
+            + "td { position: fixed; display: grid; }\ndiv { margin: 0 }</style></head><body><p>Ugyldig css</p></body></html>",
+        "<html><body><script>alert('x');</script><p onclick=\"alert('x')\">Ugyldig html</p>"
+            + "<img src=\"http://example.com/a.png\"><a href=\"javascript:alert('x')\">lenke</a><iframe src=\"x\"></iframe>"
+            + "<div style=\"width: 100%; float: left; clear: both\">Tekst<br/>med <em>uavsluttede <b>tagger</div></body></html>"
+    );
+
+    /**
+     * @return the documents, as UTF-8
+     */
+    public static List<byte[]> documents() {
+        return Collections.unmodifiableList(DOCUMENTS.stream().map(document -> document.getBytes(StandardCharsets.UTF_8)).collect(toList()));
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds any of a set of words in a text, ignoring case, in one pass over the text. The words are compiled to an
+ * Aho-Corasick automaton with a transition for every ascii char, so scanning is one table lookup per char no
+ * matter how many words there are, and does not allocate.
+ * <p>
+ * The words must be ascii. A-Z and a-z are matched as the same letter, and chars outside ascii can not be part of a word.
+ */
+final class WordScanner {
+
+    private static final int ALPHABET = 128;
+
+    private final Set<String> words;
+    private final int[] transitions;
+    private final boolean[] matches;
+
+    WordScanner(Collection<String> words) {
+        Set<String> lowerCaseWords = new LinkedHashSet<>();
+        for (String word : words) {
+            if (word.isEmpty() || !word.chars().allMatch(c -> c < ALPHABET)) {
+                throw new IllegalArgumentException("Words must be ascii and not empty, was '" + word + "'");
+            }
+            lowerCaseWords.add(toLowerCase(word));
+        }
+        this.words = Collections.unmodifiableSet(lowerCaseWords);
+
+        // The trie of the words, with state 0 as root
+        List<int[]> trie = new ArrayList<>();
+        List<Boolean> wordEnds = new ArrayList<>();
+        trie.add(newState());
+        wordEnds.add(false);
+        for (String word : lowerCaseWords) {
+            int state = 0;
+            for (int i = 0; i < word.length(); i++) {
+                int c = word.charAt(i);
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState());
+                    wordEnds.add(false);
+                }
+                state = trie.get(state)[c];
+            }
+            wordEnds.set(state, true);
+        }
+
+        // Breadth first, so the failure state of every state is done before the state itself
+        int states = trie.size();
+        this.transitions = new int[states * ALPHABET];
+        this.matches = new boolean[states];
+        int[] failure = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = trie.get(0)[c];
+            transitions[c] = next < 0 ? 0 : next;
+            if (next > 0) {
+                queue.add(next);
+            }
+        }
+        matches[0] = false;
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            matches[state] = wordEnds.get(state) || matches[failure[state]];
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = trie.get(state)[c];
+                int fallback = transitions[failure[state] * ALPHABET + c];
+                if (next < 0) {
+                    transitions[state * ALPHABET + c] = fallback;
+                } else {
+                    failure[next] = fallback;
+                    transitions[state * ALPHABET + c] = next;
+                    queue.add(next);
+                }
+            }
+        }
+        for (int state = 0; state < states; state++) {
+            for (int c = 'A'; c <= 'Z'; c++) {
+                transitions[state * ALPHABET + c] = transitions[state * ALPHABET + c + ('a' - 'A')];
+            }
+        }
+    }
+
+    /**
+     * @return the words, in lower case
+     */
+    Set<String> words() {
+        return words;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof WordScanner && words.equals(((WordScanner) o).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return words.hashCode();
+    }
+
+    WordScanner withWords(Collection<String> additionalWords) {
+        Set<String> allWords = new LinkedHashSet<>(words);
+        allWords.addAll(additionalWords);
+        return new WordScanner(allWords);
+    }
+
+    boolean containsAny(CharSequence text) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            state = c < ALPHABET ? transitions[state * ALPHABET + c] : 0;
+            if (matches[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] newState() {
+        int[] state = new int[ALPHABET];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static String toLowerCase(String word) {
+        char[] chars = word.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'A' && chars[i] <= 'Z') {
+                chars[i] += 'a' - 'A';
+            }
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.metrics;
+
+/**
+ * Receives measurements from {@link no.digipost.sanitizing.HtmlValidator HtmlValidator} and
+ * {@link no.digipost.sanitizing.DigipostValidatingHtmlSanitizer DigipostValidatingHtmlSanitizer}, see their
+ * {@code withMetrics} methods. Every method does nothing by default, so implement only what you need.
+ * <p>
+ * The methods are called on the thread validating the document, while it is validated, and must be thread safe
+ * and fast. Tag and attribute names come from the documents, so do not use them as metric names or tags
+ * without limiting how many different ones there can be.
+ */
+public interface ValidationMetrics {
+
+    /**
+     * Measures nothing. With this, which is the default, no time is measured at all.
+     */
+    ValidationMetrics NO_OP = new ValidationMetrics() {};
+
+    /**
+     * Time spent in one phase of validating a document.
+     */
+    default void phase(ValidationPhase phase, long nanos) {
+    }
+
+    /**
+     * The size of a document given to {@code HtmlValidator}, before it is decoded.
+     */
+    default void documentSize(int bytes) {
+    }
+
+    /**
+     * A document has been sanitized, whether it was valid or not.
+     *
+     * @param policyVersion the version of the policy used, {@code V1}, {@code V2} or {@code custom}
+     * @param styleElements the number of style-elements with css validated
+     * @param images the number of images inlined in {@code img src} validated
+     */
+    default void sanitized(String policyVersion, int styleElements, int images) {
+    }
+
+    /**
+     * A violation of the policy.
+     *
+     * @param attributeName the attribute which is not allowed, or {@code null} if the tag itself is not allowed
+     */
+    default void violation(String tagName, String attributeName) {
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.metrics;
+
+public enum ValidationPhase {
+
+    /**
+     * Matching the document against a {@link no.digipost.sanitizing.HtmlTemplate template}.
+     */
+    TEMPLATE_MATCH,
+
+    /**
+     * Screening the document for what the policy never accepts, before it is parsed, when the screen is turned on.
+     */
+    PRE_SCREEN,
+
+    /**
+     * Decoding the document from UTF-8 bytes.
+     */
+    DECODE,
+
+    /**
+     * Parsing and sanitizing the document with the OWASP sanitizer, including {@link #CSS_VALIDATION}.
+     */
+    SANITIZE,
+
+    /**
+     * Validating and escaping the css of one style-element. Part of {@link #SANITIZE}.
+     */
+    CSS_VALIDATION,
+
+    /**
+     * Comparing the sanitized document with the original.
+     */
+    COMPARE
+}
@@ -0,0 +1,409 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing;
+
+import no.digipost.sanitizing.exception.CSSValidationException;
+import no.digipost.sanitizing.exception.HTMLValidationException;
+import no.digipost.sanitizing.exception.ValidationError;
+import no.digipost.sanitizing.internal.PolicyFactoryProvider;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import no.digipost.sanitizing.metrics.ValidationPhase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.owasp.html.HtmlPolicyBuilder;
+import org.owasp.html.PolicyFactory;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static co.unruly.matchers.Java8Matchers.where;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DigipostValidatingHtmlSanitizerTest {
+
+    private PrintStream old;
+    private ByteArrayOutputStream systout;
+
+    @BeforeEach
+    void setUp() {
+        systout = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(systout);
+        old = System.out;
+        System.setOut(ps);
+    }
+
+    @Test
+    void should_sanitize_html() {
+        DigipostValidatingHtmlSanitizer.main(new String[]{
+            "<html><head><!--script>alert('per');</script--><body><h1>Hello World!</h1></body></html>"
+        });
+
+        assertThat(systout.toString(), allOf(
+            not(equalTo("")),
+            not(containsString("script"))
+        ));
+    }
+
+    @Test
+    void should_write_sanitized_html_to_appendable_and_stream() throws IOException {
+        String html = "<!DOCTYPE html><html><body><p>Blåbær <a href=\"https://www.digipost.no\">Digipost</a></body></html>";
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer();
+        String expected = sanitizer.sanitize(html, PolicyFactoryProvider.getPolicyFactory());
+
+        StringWriter writer = new StringWriter();
+        sanitizer.sanitize(html, PolicyFactoryProvider.getPolicyFactory(), writer);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        sanitizer.sanitize(html, PolicyFactoryProvider.getPolicyFactory(), stream);
+
+        assertThat(expected, startsWith("<!doctype html><html>"));
+        assertThat(writer.toString(), equalTo(expected));
+        assertThat(new String(stream.toByteArray(), StandardCharsets.UTF_8), equalTo(expected));
+    }
+
+    @Test
+    void should_flush_appendable_for_every_policy() throws IOException {
+        PolicyFactory custom = new HtmlPolicyBuilder().allowElements("p").toFactory();
+        for (PolicyFactory policy : Arrays.asList(PolicyFactoryProvider.getPolicyFactory(), custom)) {
+            StringWriter written = new StringWriter();
+            BufferedWriter writer = new BufferedWriter(written);
+
+            new DigipostValidatingHtmlSanitizer().sanitize("<p>Hei</p>", policy, writer);
+
+            assertThat(written.toString(), equalTo(new DigipostValidatingHtmlSanitizer().sanitize("<p>Hei</p>", policy)));
+        }
+    }
+
+    @Test
+    void should_throw_io_exception_from_appendable() {
+        Writer failingWriter = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("Full disk");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        IOException thrown = assertThrows(IOException.class,
+            () -> new DigipostValidatingHtmlSanitizer().sanitize("<p>Hei</p>", PolicyFactoryProvider.getPolicyFactory(), failingWriter));
+
+        assertThat(thrown.getMessage(), equalTo("Full disk"));
+    }
+
+    @Test
+    void should_fail_validation_html() {
+        HTMLValidationException thrown =
+            assertThrows(HTMLValidationException.class,
+                () -> DigipostValidatingHtmlSanitizer.main(new String[]{
+                    "<html><head><script>alert('per');</script><body><h1>Hello World!</h1></body></html>"
+                }),
+                "Expected main() to throw, but it didn't");
+
+        assertThat(thrown.getValidationErrors().get(0), equalTo("Found HTML policy violation. Tag name: script"));
+    }
+
+    @Test
+    void should_fail_validation_css() {
+        CSSValidationException thrown =
+            assertThrows(CSSValidationException.class,
+                () -> DigipostValidatingHtmlSanitizer.main(new String[]{
+                    "<html><head><style>@media print {} </style><body><h1>Hello World!</h1></body></html>"
+                }),
+                "Expected main() to throw, but it didn't");
+
+        assertThat(thrown.getValidationErrors().get(0), equalTo("CSS in style-element is invalid."));
+    }
+
+    @Test
+    void should_fail_script_inside_style_element() {
+        // Test for CVE_2021_42575
+        CSSValidationException thrown =
+            assertThrows(CSSValidationException.class,
+                () -> DigipostValidatingHtmlSanitizer.main(new String[]{
+                    "<select><option><style><script>alert(1)</script></style></option></select>"
+                }),
+                "Expected main() to throw, but it didn't");
+
+        assertThat(thrown.getValidationErrors().get(0), equalTo("CSS in style-element is invalid."));
+    }
+
+    @Test
+    void should_report_all_errors_by_default() {
+        HTMLValidationException thrown =
+            assertThrows(HTMLValidationException.class,
+                () -> new DigipostValidatingHtmlSanitizer().sanitize(HTML_WITH_TWO_ERRORS, PolicyFactoryProvider.getPolicyFactory()));
+
+        assertThat(thrown.getValidationErrors(), contains(
+            "Found HTML policy violation. Tag name: script",
+            "Found HTML policy violation: Tag name: p, attribute(s): onclick"));
+    }
+
+    @Test
+    void should_give_structured_errors() {
+        HTMLValidationException thrown =
+            assertThrows(HTMLValidationException.class, () -> new DigipostValidatingHtmlSanitizer().sanitize(HTML_WITH_TWO_ERRORS, PolicyFactoryProvider.getPolicyFactory()));
+
+        assertThat(thrown.getErrors(), contains(
+            allOf(where(ValidationError::getCode, is(ValidationError.Code.ILLEGAL_TAG)), where(ValidationError::getElement, is("script"))),
+            allOf(where(ValidationError::getCode, is(ValidationError.Code.ILLEGAL_ATTRIBUTES)), where(ValidationError::getAttributes, contains("onclick")))));
+        assertThat(thrown.getValidationErrors(), contains(
+            "Found HTML policy violation. Tag name: script",
+            "Found HTML policy violation: Tag name: p, attribute(s): onclick"));
+    }
+
+    @Test
+    void should_serialize_exception_with_structured_errors() throws Exception {
+        HTMLValidationException thrown =
+            assertThrows(HTMLValidationException.class, () -> new DigipostValidatingHtmlSanitizer().sanitize(HTML_WITH_TWO_ERRORS, PolicyFactoryProvider.getPolicyFactory()));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(thrown);
+        }
+        HTMLValidationException deserialized;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            deserialized = (HTMLValidationException) in.readObject();
+        }
+
+        assertThat(deserialized.getErrors(), contains(
+            allOf(where(ValidationError::getCode, is(ValidationError.Code.ILLEGAL_TAG)), where(ValidationError::getElement, is("script"))),
+            allOf(where(ValidationError::getCode, is(ValidationError.Code.ILLEGAL_ATTRIBUTES)), where(ValidationError::getAttributes, contains("onclick")))));
+        assertThat(deserialized.getValidationErrors(), equalTo(thrown.getValidationErrors()));
+    }
+
+    @Test
+    void should_create_exceptions_from_messages() {
+        assertThat(new HTMLValidationException(new ArrayList<>()).getErrors(), empty());
+        assertThat(new CSSValidationException(Collections.emptyList()).getErrors(), empty());
+        assertThat(new HTMLValidationException(Arrays.asList("feil")).getErrors(), contains(
+            allOf(where(ValidationError::getCode, is(ValidationError.Code.OTHER)), where(ValidationError::getMessage, is("feil")))));
+    }
+
+    @Test
+    void should_stop_validation_after_max_errors() {
+        HTMLValidationException thrown =
+            assertThrows(HTMLValidationException.class,
+                () -> new DigipostValidatingHtmlSanitizer().withMaxErrors(1).sanitize(HTML_WITH_TWO_ERRORS, PolicyFactoryProvider.getPolicyFactory()));
+
+        assertThat(thrown.getValidationErrors(), contains("Found HTML policy violation. Tag name: script"));
+    }
+
+    @Test
+    void should_not_allow_max_errors_less_than_one() {
+        assertThrows(IllegalArgumentException.class, () -> new DigipostValidatingHtmlSanitizer().withMaxErrors(0));
+    }
+
+    @Test
+    void should_reject_document_exceeding_max_match_steps() {
+        String html = "<p title=\"Hello\">World</p><p title=\"Hello again\">World</p>";
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer().withMaxMatchSteps(10);
+
+        HTMLValidationException thrown =
+            assertThrows(HTMLValidationException.class, () -> sanitizer.sanitize(html, PolicyFactoryProvider.getPolicyFactory()));
+
+        assertThat(thrown.getValidationErrors(), contains("Document exceeds the limit of 10 steps for matching attribute and css values."));
+        assertThat(sanitizer.sanitize("<p title=\"Hello\">World</p>", PolicyFactoryProvider.getPolicyFactory()), equalTo("<p title=\"Hello\">World</p>"));
+    }
+
+    @Test
+    void should_not_allow_max_match_steps_less_than_one() {
+        assertThrows(IllegalArgumentException.class, () -> new DigipostValidatingHtmlSanitizer().withMaxMatchSteps(0));
+    }
+
+    @Test
+    void should_reject_image_larger_than_max_image_bytes() {
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer().withMaxImageBytes(50, 1000);
+
+        HTMLValidationException thrown =
+            assertThrows(HTMLValidationException.class, () -> sanitizer.sanitize(HTML_IMG_RED_DOT, PolicyFactoryProvider.getPolicyFactory()));
+
+        assertThat(thrown.getValidationErrors(), contains("Image is larger than the limit of 50 bytes."));
+    }
+
+    @Test
+    void should_reject_images_larger_than_max_image_bytes_per_document() {
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer().withMaxImageBytes(100, 150);
+
+        sanitizer.sanitize(HTML_IMG_RED_DOT, PolicyFactoryProvider.getPolicyFactory());
+        HTMLValidationException thrown =
+            assertThrows(HTMLValidationException.class, () -> sanitizer.sanitize(HTML_IMG_RED_DOT + HTML_IMG_RED_DOT, PolicyFactoryProvider.getPolicyFactory()));
+
+        assertThat(thrown.getValidationErrors(), contains("Images in document are larger than the limit of 150 bytes."));
+    }
+
+    @Test
+    void should_check_magic_bytes_of_images_when_enabled() {
+        String pngDeclaredAsGif = HTML_IMG_RED_DOT.replace("image/png", "image/gif");
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer().withImageMagicBytesCheck();
+
+        new DigipostValidatingHtmlSanitizer().sanitize(pngDeclaredAsGif, PolicyFactoryProvider.getPolicyFactory());
+        sanitizer.sanitize(HTML_IMG_RED_DOT, PolicyFactoryProvider.getPolicyFactory());
+        HTMLValidationException thrown =
+            assertThrows(HTMLValidationException.class, () -> sanitizer.sanitize(pngDeclaredAsGif, PolicyFactoryProvider.getPolicyFactory()));
+
+        assertThat(thrown.getValidationErrors(), contains("Found HTML policy violation: Tag name: img, attribute(s): src"));
+    }
+
+    @Test
+    void should_reject_additional_css_blacklisted_words() {
+        String html = "<html><head><style>.myClass { font-family: Comic Sans MS; }</style></head><body>Hello</body></html>";
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer().withCssBlacklistedWords("comic sans");
+
+        new DigipostValidatingHtmlSanitizer().sanitize(html, PolicyFactoryProvider.getPolicyFactory());
+        CSSValidationException thrown =
+            assertThrows(CSSValidationException.class, () -> sanitizer.sanitize(html, PolicyFactoryProvider.getPolicyFactory()));
+
+        assertThat(thrown.getValidationErrors(), contains("Content of selector '.myClass' contains one or more illegal words."));
+    }
+
+    @Test
+    void should_report_metrics() {
+        String html = "<html><head><style>.a { color: red; }</style><style>.b { color: blue; }</style></head>"
+            + "<body>" + HTML_IMG_RED_DOT + "<p onclick=\"alert('per')\">Hello</p><script></script></body></html>";
+        List<String> reported = new ArrayList<>();
+        Set<ValidationPhase> phases = EnumSet.noneOf(ValidationPhase.class);
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer().withMetrics(new ValidationMetrics() {
+            @Override
+            public void phase(ValidationPhase phase, long nanos) {
+                phases.add(phase);
+            }
+
+            @Override
+            public void sanitized(String policyVersion, int styleElements, int images) {
+                reported.add(policyVersion + " " + styleElements + " " + images);
+            }
+
+            @Override
+            public void violation(String tagName, String attributeName) {
+                reported.add(tagName + " " + attributeName);
+            }
+        });
+
+        assertThrows(HTMLValidationException.class, () -> sanitizer.sanitize(html, PolicyFactoryProvider.getPolicyFactory()));
+
+        assertThat(reported, containsInAnyOrder("p onclick", "script null", "V2 2 1"));
+        assertThat(phases, containsInAnyOrder(ValidationPhase.SANITIZE, ValidationPhase.CSS_VALIDATION));
+    }
+
+    @Test
+    void should_give_same_results_with_reusable_buffers() {
+        List<String> documents = new ArrayList<>();
+        documents.add("<html><head><style>.a { color: red; }</style></head><body>" + HTML_IMG_RED_DOT + "<p>Hello</p></body></html>");
+        documents.add(HTML_WITH_TWO_ERRORS);
+        documents.add("<p>Hello<br></p>");
+        documents.add("<html><head><style>.a { position: absolute; }</style></head><body></body></html>");
+        documents.add("<p>Hello</p>");
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer();
+        DigipostValidatingHtmlSanitizer reusing = new DigipostValidatingHtmlSanitizer().withReusableBuffers();
+        List<Object> expected = new ArrayList<>();
+        List<Object> actual = new ArrayList<>();
+
+        for (int round = 0; round < 2; round++) {
+            for (String html : documents) {
+                expected.add(resultOf(() -> sanitizer.sanitize(html, PolicyFactoryProvider.getPolicyFactory())));
+                actual.add(resultOf(() -> reusing.sanitize(html, PolicyFactoryProvider.getPolicyFactory())));
+                expected.add(resultOf(() -> sanitizer.isUnchangedBySanitizing(html, PolicyFactoryProvider.getPolicyFactory())));
+                actual.add(resultOf(() -> reusing.isUnchangedBySanitizing(html, PolicyFactoryProvider.getPolicyFactory())));
+            }
+        }
+
+        assertThat(actual, equalTo(expected));
+    }
+
+    @Test
+    void should_keep_errors_of_exception_when_buffers_are_reused() {
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer().withReusableBuffers();
+
+        HTMLValidationException thrown = assertThrows(HTMLValidationException.class, () -> sanitizer.sanitize(HTML_WITH_TWO_ERRORS, PolicyFactoryProvider.getPolicyFactory()));
+        sanitizer.sanitize("<p>Hello</p>", PolicyFactoryProvider.getPolicyFactory());
+        assertThrows(HTMLValidationException.class, () -> sanitizer.sanitize("<blink>Hello</blink>", PolicyFactoryProvider.getPolicyFactory()));
+
+        assertThat(thrown.getValidationErrors(), contains(
+            "Found HTML policy violation. Tag name: script",
+            "Found HTML policy violation: Tag name: p, attribute(s): onclick"));
+    }
+
+    @Test
+    void should_reject_hostile_documents_with_the_first_screened_error() {
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer().withPreScreen();
+
+        HTMLValidationException thrown = assertThrows(HTMLValidationException.class, () -> sanitizer.sanitize(HTML_WITH_TWO_ERRORS, PolicyFactoryProvider.getPolicyFactory()));
+
+        assertThat(thrown.getValidationErrors(), contains("Found HTML policy violation. Tag name: script"));
+        assertThat(sanitizer.sanitize("<p title=\"onclick\">Hello <!-- <script> --></p>", PolicyFactoryProvider.getPolicyFactory()), is("<p title=\"onclick\">Hello </p>"));
+    }
+
+    @Test
+    void should_not_pre_screen_custom_policies() {
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer().withPreScreen();
+        PolicyFactory custom = new HtmlPolicyBuilder().allowElements("p").toFactory();
+
+        HTMLValidationException thrown = assertThrows(HTMLValidationException.class, () -> sanitizer.sanitize(HTML_WITH_TWO_ERRORS, custom));
+
+        assertThat(thrown.getErrors().size(), is(4));
+    }
+
+    private static Object resultOf(Supplier<Object> validation) {
+        try {
+            return validation.get();
+        } catch (HTMLValidationException | CSSValidationException e) {
+            return e.getValidationErrors();
+        }
+    }
+
+    private static final String HTML_IMG_RED_DOT = "<img src=\"data:image/png;base64,"
+        + "iVBORw0KGgoAAAANSUhEUgAAAAUAAAAFCAYAAACNbyblAAAAHElEQVQI12P4//8/w38GIAXDIBKE0DHxg"
+        + "ljNBAAO9TXL0Y4OHwAAAABJRU5ErkJggg==\" alt=\"Red dot\" />";
+
+    private static final String HTML_WITH_TWO_ERRORS = "<html><body><script>alert('per');</script><p onclick=\"alert('per')\">Hello World!</p></body></html>";
+
+    @AfterEach
+    void tearDown() {
+        System.setOut(old);
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing;
+
+import no.digipost.sanitizing.exception.ValidationException;
+import no.digipost.sanitizing.internal.PolicyFactoryProvider;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import no.digipost.sanitizing.metrics.ValidationPhase;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HtmlTemplateTest {
+
+    private static final String MAL = "<!doctype html><html><head><title>Brev</title><style>.a { color: red; }</style></head>"
+        + "<body><p class=\"a\">Hei {{navn}},</p><table><tbody><tr><td>Beløp</td><td>{{beløp}} kr</td></tr></tbody></table>"
+        + "<p>Med vennlig hilsen<br />{{avsender}}</p></body></html>";
+
+    private final HtmlValidator validator = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC));
+
+    @Test
+    void dokument_fra_malen_skal_være_ok_uten_å_saniteres() {
+        final List<ValidationPhase> faser = new ArrayList<>();
+        final HtmlTemplate mal = validator.withMetrics(new ValidationMetrics() {
+            @Override
+            public void phase(ValidationPhase phase, long nanos) {
+                faser.add(phase);
+            }
+        }).compileTemplate(MAL);
+        faser.clear();
+
+        final HtmlValidationResult resultat = mal.valider(fraMal("Kari Nordmann", "1 234,50", "Posten Norge AS – Kundeservice"));
+
+        assertSame(HtmlValidationResult.HTML_EVERYTHING_OK, resultat);
+        assertEquals(Collections.singletonList(ValidationPhase.TEMPLATE_MATCH), faser);
+        assertEquals(Arrays.asList("navn", "beløp", "avsender"), mal.slots());
+    }
+
+    @Test
+    void dokument_som_ikke_følger_malen_skal_valideres_som_vanlig() {
+        final HtmlTemplate mal = validator.compileTemplate(MAL);
+
+        for (byte[] dokument : Arrays.asList(
+                fraMal("<script>alert(1)</script>", "10", "Posten"),
+                fraMal("Kari & Ola", "10", "Posten"),
+                fraMal("Kari", "<b>10</b>", "Posten"),
+                fraMal("Kari", "10", "{{avsender}}"),
+                fraMal("Kari", "10", " "),
+                "<html><body><p>Et helt annet brev</p></body></html>".getBytes(StandardCharsets.UTF_8),
+                (new String(fraMal("Kari", "10", "Posten"), StandardCharsets.UTF_8) + "<p onclick=x>").getBytes(StandardCharsets.UTF_8))) {
+            assertEquals(validator.valider(dokument).toString(), mal.valider(dokument).toString());
+            assertEquals(validator.validerVerdikt(dokument).toString(), mal.validerVerdikt(dokument).toString());
+        }
+        assertFalse(mal.valider(fraMal("<script>alert(1)</script>", "10", "Posten")).okForWeb);
+    }
+
+    @Test
+    void skal_gi_samme_resultat_som_validator_for_tilfeldig_tekst_i_malen() {
+        final HtmlTemplate mal = validator.compileTemplate(MAL);
+        final String[] biter = {"Kari", " ", "\n", "æøå", "€", "–", "’", ",", ";", "!", "(", "}", "1", " ",
+            "<", ">", "&", "&amp;", "\"", "'", "=", "+", "@", "`", "{", "😀", "�", "\u0000", "\u007f", "</p>", "<!--"};
+        final Random random = new Random(42);
+        for (int i = 0; i < 2_000; i++) {
+            final String[] tekster = new String[3];
+            for (int slot = 0; slot < tekster.length; slot++) {
+                final StringBuilder tekst = new StringBuilder();
+                for (int j = random.nextInt(4); j > 0; j--) {
+                    tekst.append(biter[random.nextInt(random.nextBoolean() ? 13 : biter.length)]);
+                }
+                tekster[slot] = tekst.toString();
+            }
+            final byte[] dokument = fraMal(tekster);
+
+            assertEquals(validator.valider(dokument).toString(), mal.valider(dokument).toString(), Arrays.toString(tekster));
+        }
+    }
+
+    @Test
+    void slot_som_ikke_er_i_tekst_skal_avvises() {
+        assertThrows(IllegalArgumentException.class, () -> validator.compileTemplate("<p class=\"{{klasse}}\">Hei</p>"));
+        assertThrows(IllegalArgumentException.class, () -> validator.compileTemplate("<p>Hei</p><!-- {{kommentar}} -->"));
+        assertThrows(IllegalArgumentException.class, () -> validator.compileTemplate("<html><head><title>{{tittel}}</title></head></html>"));
+        assertThrows(IllegalArgumentException.class, () -> validator.compileTemplate("<html><head><style>.a { color: {{farge}}; }</style></head></html>"));
+    }
+
+    @Test
+    void mal_som_er_ugyldig_eller_endres_av_sanitering_skal_avvises() {
+        assertThrows(ValidationException.class, () -> validator.compileTemplate("<p onclick=\"x\">Hei {{navn}}</p>"));
+        assertThrows(IllegalArgumentException.class, () -> validator.compileTemplate("<p>Hei {{navn}}"));
+        assertThrows(IllegalArgumentException.class, () -> validator.compileTemplate("<p>Hei &amp{{navn}}</p>"));
+        assertThrows(IllegalArgumentException.class, () -> validator.compileTemplate("<p>Hei {{fornavn}}{{etternavn}}</p>"));
+        assertThrows(IllegalArgumentException.class, () -> validator.compileTemplate("<p>Hei {{navn</p>"));
+        assertThrows(IllegalArgumentException.class, () -> validator.compileTemplate("<p>Hei {{ navn }}</p>"));
+    }
+
+    private static byte[] fraMal(String... tekster) {
+        return MAL.replace("{{navn}}", tekster[0]).replace("{{beløp}}", tekster[1]).replace("{{avsender}}", tekster[2]).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing;
+
+import no.digipost.sanitizing.internal.PolicyFactoryProvider;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HtmlValidationCacheTest {
+
+    private final HtmlValidationCache cache = new HtmlValidationCache(100, 1_000_000);
+    private final HtmlValidator V1_validator = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT.minusSeconds(1), ZoneOffset.UTC)).withCache(cache);
+    private final HtmlValidator V2_validator = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC)).withCache(cache);
+
+    @Test
+    void like_dokumenter_skal_hentes_fra_cache() {
+        final HtmlValidationResult first = V2_validator.valider("<html><body></html>".getBytes());
+        final HtmlValidationResult second = V2_validator.valider("<html><body></html>".getBytes());
+
+        assertSame(first, second);
+        assertEquals(1, cache.stats().hitCount);
+        assertEquals(1, cache.stats().missCount);
+    }
+
+    @Test
+    void endring_i_dokumentet_etter_validering_skal_ikke_endre_cachen() {
+        final byte[] html = "<html><body><script/></body></html>".getBytes();
+        assertFalse(V2_validator.valider(html).okForWeb);
+
+        html[13] = 'b';
+        assertFalse(V2_validator.valider("<html><body><script/></body></html>".getBytes()).okForWeb);
+        assertEquals(1, cache.stats().hitCount);
+    }
+
+    @Test
+    void forskjellig_policy_skal_ikke_gi_treff() {
+        final byte[] html = "<html><body><style>.per{display:none;}</style></body></html>".getBytes();
+
+        assertTrue(V1_validator.valider(html).okForWeb);
+        assertFalse(V2_validator.valider(html).okForWeb);
+        assertEquals(0, cache.stats().hitCount);
+    }
+
+    @Test
+    void validatorer_med_forskjellige_innstillinger_skal_ikke_dele_treff() {
+        final byte[] html = "<html><body><p onclick=\"a()\">1</p><p onclick=\"b()\">2</p><p onclick=\"c()\">3</p></body></html>".getBytes();
+        final HtmlValidator enFeil = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC), new DigipostValidatingHtmlSanitizer().withMaxErrors(1)).withCache(cache);
+        final HtmlValidator svarteliste = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC), new DigipostValidatingHtmlSanitizer().withCssBlacklistedWords("red")).withCache(cache);
+
+        assertEquals(1, enFeil.valider(html).getErrors().size());
+        assertEquals(3, V2_validator.valider(html).getErrors().size());
+        assertEquals(3, svarteliste.valider(html).getErrors().size());
+        assertEquals(0, cache.stats().hitCount);
+
+        final HtmlValidator likeInnstillinger = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC), new DigipostValidatingHtmlSanitizer().withMaxErrors(1))
+            .withMetrics(ValidationMetrics.NO_OP).withCache(cache);
+        assertEquals(1, likeInnstillinger.valider(html).getErrors().size());
+        assertEquals(1, cache.stats().hitCount);
+    }
+
+    @Test
+    void validator_med_pre_screen_skal_ikke_dele_treff_med_validator_uten() {
+        final byte[] html = "<html><body><p onclick=\"a()\">1</p><p onclick=\"b()\">2</p></body></html>".getBytes();
+        final HtmlValidator preScreen = V2_validator.withPreScreen();
+        final HtmlValidator sanitizerPreScreen = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC), new DigipostValidatingHtmlSanitizer().withPreScreen()).withCache(cache);
+
+        assertEquals(1, preScreen.valider(html).getErrors().size());
+        assertEquals(1, sanitizerPreScreen.valider(html).getErrors().size());
+        assertEquals(2, V2_validator.valider(html).getErrors().size());
+        assertEquals(0, cache.stats().hitCount);
+    }
+
+    @Test
+    void verdikt_skal_bruke_resultat_fra_valider_uten_vasket_html() {
+        final byte[] html = "<html><body></html>".getBytes();
+        V2_validator.valider(html);
+
+        assertSame(HtmlValidationResult.HTML_OK_WITH_DIFF, V2_validator.validerVerdikt(html));
+        assertEquals(1, cache.stats().hitCount);
+    }
+
+    @Test
+    void verdikt_med_diff_skal_ikke_caches() {
+        final byte[] html = "<html><body></html>".getBytes();
+        V2_validator.validerVerdikt(html);
+
+        assertTrue(V2_validator.valider(html).toString().contains("<html><body></body></html>"));
+        assertEquals(0, cache.stats().hitCount);
+    }
+
+    @Test
+    void skal_kaste_ut_minst_nylig_brukte_dokument_naar_cachen_er_full() {
+        final HtmlValidationCache smallCache = new HtmlValidationCache(2, 1_000_000);
+        final HtmlValidator validator = V2_validator.withCache(smallCache);
+
+        validator.valider("<p>1</p>".getBytes());
+        validator.valider("<p>2</p>".getBytes());
+        validator.valider("<p>1</p>".getBytes());
+        validator.valider("<p>3</p>".getBytes());
+
+        assertEquals(1, smallCache.stats().evictionCount);
+        validator.valider("<p>1</p>".getBytes());
+        assertEquals(2, smallCache.stats().hitCount);
+    }
+
+    @Test
+    void skal_ikke_cache_dokumenter_stoerre_enn_maks_vekt() {
+        final HtmlValidationCache smallCache = new HtmlValidationCache(100, 10);
+        final HtmlValidator validator = V2_validator.withCache(smallCache);
+
+        validator.valider("<p>Et dokument som er for stort</p>".getBytes());
+
+        assertEquals(0, smallCache.stats().size);
+    }
+
+    @Test
+    void like_attributtverdier_i_ulike_dokumenter_skal_matches_én_gang() {
+        final HtmlValidator validator = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC));
+        final long treffFør = HtmlValidator.attributeCacheStats().hitCount;
+
+        assertTrue(validator.valider("<p class=\"attributt-cache-test\">Første</p>".getBytes()).okForWeb);
+        assertTrue(validator.valider("<p class=\"attributt-cache-test\">Andre</p>".getBytes()).okForWeb);
+        assertFalse(validator.valider("<p class=\"attributt-cache-test&quot;\">Tredje</p>".getBytes()).okForWeb);
+        assertFalse(validator.valider("<p class=\"attributt-cache-test&quot;\">Fjerde</p>".getBytes()).okForWeb);
+
+        assertTrue(HtmlValidator.attributeCacheStats().hitCount >= treffFør + 2);
+    }
+
+    @Test
+    void like_stilark_i_ulike_dokumenter_skal_valideres_én_gang() {
+        final HtmlValidator validator = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC));
+        final String gyldig = "<style>.stilark-cache-test { color: red; }</style>";
+        final String ugyldig = "<style>.stilark-cache-test { behavior: x; }</style>";
+        final long treffFør = HtmlValidator.stylesheetCacheStats().hitCount;
+
+        assertTrue(validator.valider(("<html><head>" + gyldig + "</head><body><p>Første</p></body></html>").getBytes()).okForWeb);
+        assertTrue(validator.valider(("<html><head>" + gyldig + "</head><body><p>Andre</p></body></html>").getBytes()).okForWeb);
+        final HtmlValidationResult første = validator.valider(("<html><head>" + ugyldig + "</head><body><p>Første</p></body></html>").getBytes());
+        final HtmlValidationResult andre = validator.valider(("<html><head>" + ugyldig + "</head><body><p>Andre</p></body></html>").getBytes());
+
+        assertFalse(andre.okForWeb);
+        assertEquals(første.getErrors(), andre.getErrors());
+        assertTrue(HtmlValidator.stylesheetCacheStats().hitCount >= treffFør + 2);
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing;
+
+import no.digipost.sanitizing.exception.ValidationError;
+import no.digipost.sanitizing.internal.PolicyFactoryProvider;
+import no.digipost.sanitizing.internal.TagBoundaryScanner;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HtmlValidationSessionTest {
+
+    private final HtmlValidator validator = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC));
+
+    @Test
+    void oppdelt_dokument_skal_gi_samme_resultat_som_helt_dokument() {
+        for (String html : Arrays.asList(
+            "  <!DOCTYPE html><html><head><style>.a { color: red; }\n.b { font-family: Arial, sans-serif; }</style></head><body><p class=\"a\">Blåbær 😀</p></body></html>",
+            "<html><head><style>.a { position: fixed; }</style></head></html>",
+            "<html><body><p onclick=\"x\">Hei</p><a href=\"https://www.digipost.no\">lenke</a></body></html>")) {
+            final byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+            final String forventet = validator.valider(bytes).toString();
+            for (int størrelse : new int[]{1, 2, 3, 7, 64, bytes.length}) {
+                final HtmlValidationSession session = validator.startSession();
+                for (int i = 0; i < bytes.length; i += størrelse) {
+                    session.feed(bytes, i, Math.min(størrelse, bytes.length - i));
+                }
+                assertEquals(forventet, session.finish().toString(), html + " i biter på " + størrelse);
+            }
+        }
+    }
+
+    @Test
+    void ugyldig_dokument_skal_avvises_før_hele_er_mottatt() {
+        final byte[] bytes = dokument("<p onclick=\"x\">Hei</p>", 2000).getBytes(StandardCharsets.UTF_8);
+        final HtmlValidationSession session = validator.startSession();
+
+        int mottatt = 0;
+        while (mottatt < bytes.length && session.feed(ByteBuffer.wrap(bytes, mottatt, Math.min(1024, bytes.length - mottatt)))) {
+            mottatt += 1024;
+        }
+
+        assertTrue(mottatt < bytes.length / 2, "avvist etter " + mottatt + " av " + bytes.length + " bytes");
+        final HtmlValidationResult resultat = session.finish();
+        assertFalse(resultat.okForWeb);
+        assertEquals(ValidationError.Code.ILLEGAL_ATTRIBUTES, resultat.getErrors().get(0).getCode());
+    }
+
+    @Test
+    void gyldig_dokument_skal_ikke_avvises_underveis() {
+        final byte[] bytes = dokument("<!-- <p onclick=\"x\"> --><style>.a { color: red; }</style>", 2000).getBytes(StandardCharsets.UTF_8);
+        final HtmlValidationSession session = validator.startSession();
+
+        for (int i = 0; i < bytes.length; i += 1000) {
+            assertTrue(session.feed(bytes, i, Math.min(1000, bytes.length - i)));
+        }
+
+        assertEquals(validator.valider(bytes).toString(), session.finish().toString());
+    }
+
+    @Test
+    void sesjon_kan_bare_avsluttes_en_gang() {
+        final HtmlValidationSession session = validator.startSession();
+        session.finish();
+
+        assertThrows(IllegalStateException.class, session::finish);
+        assertThrows(IllegalStateException.class, () -> session.feed(new byte[1], 0, 1));
+    }
+
+    @Test
+    void grenser_skal_ikke_være_inni_kommentarer_verdier_eller_style() {
+        assertEquals(3, grense("<p>a<!-- <b>"));
+        assertEquals(3, grense("<p><p title=\"a>"));
+        assertEquals(3, grense("<p><style>p { }<b>"));
+        assertEquals(3, grense("<p><comment><b>"));
+        assertEquals(15, grense("<p title=\"a>b\">"));
+        assertEquals(40, grense("<!-- <b> --><style>p { }</style><i>x</i>"));
+    }
+
+    private static int grense(String html) {
+        final TagBoundaryScanner scanner = new TagBoundaryScanner();
+        for (int i = 0; i < html.length(); i++) {
+            scanner.scan(html, i, i + 1);
+        }
+        return scanner.lastBoundary();
+    }
+
+    private static String dokument(String start, int avsnitt) {
+        final StringBuilder html = new StringBuilder("<html><body>").append(start);
+        for (int i = 0; i < avsnitt; i++) {
+            html.append("<p class=\"avsnitt\">Avsnitt nummer ").append(i).append(" med litt tekst.</p>\n");
+        }
+        return html.append("</body></html>").toString();
+    }
+}
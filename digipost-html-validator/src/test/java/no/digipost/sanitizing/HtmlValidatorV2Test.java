@@ -0,0 +1,346 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing;
+
+import no.digipost.sanitizing.exception.ValidationError;
+import no.digipost.sanitizing.exception.ValidationException;
+import no.digipost.sanitizing.internal.PolicyFactoryProvider;
+import no.digipost.sanitizing.internal.Utf8;
+import no.digipost.sanitizing.internal.WarmUpCorpus;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import no.digipost.sanitizing.metrics.ValidationPhase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.owasp.html.PolicyFactory;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HtmlValidatorV2Test {
+
+    private final HtmlValidator V2_validator = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC));
+
+    @Test
+    void enkle_tilfeller_skal_være_helt_ok() {
+        final HtmlValidationResult valider = V2_validator.valider("<html></html>".getBytes());
+
+        assertTrue(valider.okForWeb);
+        assertSame(valider, HtmlValidationResult.HTML_EVERYTHING_OK);
+    }
+
+    @Test
+    void ikke_avsluttet_tag_skal_avsluttes() {
+        final HtmlValidationResult valider = V2_validator.valider("<html><body></html>".getBytes());
+
+        assertTrue(valider.okForWeb);
+        assertEquals(valider.toString(), "[ HtmlValidationResult OK for web\n" +
+            "<html><body></body></html>]");
+    }
+
+    @Test
+    void lenker_skal_få_rel_target() {
+        final HtmlValidationResult valider = V2_validator.valider(("<!doctype html>\n" +
+            "<html lang=\"no\">\n" +
+            "<head>\n" +
+            "    <meta charset=\"utf-8\">\n" +
+            "    <title>Posten Digipost</title>\n" +
+            "</head>\n" +
+            "<body id=\"Digipost\">\n" +
+            "<h1>Digipost</h1>\n" +
+            "</body>\n" +
+            "</html>\n").getBytes());
+
+        assertTrue(valider.okForWeb);
+        assertEquals(valider.toString(), "[ HtmlValidationResult OK for web\n" +
+            "<!doctype html>\n" +
+            "<html lang=\"no\"><head><meta charset=\"utf-8\" /><title>Posten Digipost</title></head><body id=\"Digipost\">\n" +
+            "<h1>Digipost</h1>\n" +
+            "</body></html>\n" +
+            "]");
+    }
+
+    @Test
+    void javascript_skal_kaste_exception() {
+        final HtmlValidationResult valider = V2_validator.valider("<html><body><script/></body></html>".getBytes());
+
+        assertFalse(valider.okForWeb);
+        assertEquals(valider.toString(), "[ HtmlValidationResult\n" +
+            "Found HTML policy violation. Tag name: script]");
+    }
+
+    @Test
+    void gal_css_skal_kaste_exception() {
+        final HtmlValidationResult valider = V2_validator.valider("<html><body><style>*   {color:red;}</style></body></html>".getBytes());
+
+        assertFalse(valider.okForWeb);
+        assertEquals(valider.toString(), "[ HtmlValidationResult\n" +
+            "CSS in style-element is invalid., CSS selector not found. Indicates illegal css.]");
+    }
+
+    @Test
+    void ulovlig_css_skal_kaste_exception() {
+        final HtmlValidationResult valider = V2_validator.valider("<html><body><style>.per{display:none;}</style></body></html>".getBytes());
+
+        assertFalse(valider.okForWeb);
+        assertEquals(valider.toString(), "[ HtmlValidationResult\n" +
+            "Value 'none' is not allowed for property 'display'.]");
+    }
+
+    @Test
+    void style_paa_attribute_tilfeller_skal_være_helt_ok() {
+        final HtmlValidationResult valider = V2_validator.valider("<html><body><p style=\"margin-right:1em\">Hallo</p></body></html>".getBytes());
+
+        assertTrue(valider.okForWeb);
+        assertSame(valider, HtmlValidationResult.HTML_EVERYTHING_OK);
+    }
+
+    @Test
+    void feil_om_css_i_style_attribute_ikke_er_whitelisted() {
+        final HtmlValidationResult valider = V2_validator.valider("<html><body><p style=\"display:none\">Hallo</p></body></html>".getBytes());
+
+        assertFalse(valider.okForWeb);
+    }
+
+    @Test
+    void verdikt_uten_diff_skal_være_helt_ok() {
+        final HtmlValidationResult valider = V2_validator.validerVerdikt("<!doctype html><html><body><p style=\"margin-right:1em\">Hallo</p></body></html>".getBytes());
+
+        assertSame(valider, HtmlValidationResult.HTML_EVERYTHING_OK);
+    }
+
+    @Test
+    void verdikt_med_diff_skal_ikke_inneholde_vasket_html() {
+        final HtmlValidationResult valider = V2_validator.validerVerdikt("<html><body></html>".getBytes());
+
+        assertTrue(valider.okForWeb);
+        assertTrue(valider.hasDiffAfterSanitizing);
+        assertSame(valider, HtmlValidationResult.HTML_OK_WITH_DIFF);
+    }
+
+    @Test
+    void verdikt_med_diff_tidlig_skal_fortsatt_finne_feil_senere_i_dokumentet() {
+        final HtmlValidationResult valider = V2_validator.validerVerdikt("<html><body><p>Hallo<p><script/></body></html>".getBytes());
+
+        assertFalse(valider.okForWeb);
+        assertEquals(valider.toString(), "[ HtmlValidationResult\n" +
+            "Found HTML policy violation. Tag name: script]");
+    }
+
+    @Test
+    void verdikt_med_ulovlig_css_skal_gi_samme_feil_som_valider() {
+        final byte[] html = "<html><body><style>.per{display:none;}</style></body></html>".getBytes();
+
+        assertEquals(V2_validator.valider(html).toString(), V2_validator.validerVerdikt(html).toString());
+    }
+
+    @Test
+    void pre_screen_skal_avvise_javascript_uten_å_parse_dokumentet() {
+        final List<ValidationPhase> faser = new ArrayList<>();
+        final HtmlValidator validator = V2_validator.withPreScreen().withMetrics(new ValidationMetrics() {
+            @Override
+            public void phase(ValidationPhase phase, long nanos) {
+                faser.add(phase);
+            }
+        });
+
+        final HtmlValidationResult valider = validator.valider("<html><body><p onclick=\"alert('æøå')\">Hallo</p></body></html>".getBytes(StandardCharsets.UTF_8));
+
+        assertFalse(valider.okForWeb);
+        assertEquals(valider.toString(), "[ HtmlValidationResult\n" +
+            "Found HTML policy violation: Tag name: p, attribute(s): onclick]");
+        assertEquals(Collections.singletonList(ValidationPhase.PRE_SCREEN), faser);
+        assertEquals(valider.toString(), validator.validerVerdikt("<p onclick=x>Hallo</p>".getBytes()).toString());
+        assertSame(HtmlValidationResult.HTML_EVERYTHING_OK, validator.valider("<html><body><p title=\"onclick\">Hallo</p></body></html>".getBytes()));
+    }
+
+    @Test
+    void batch_skal_gi_resultater_i_samme_rekkefølge_som_dokumentene() {
+        final List<byte[]> dokumenter = Arrays.asList(
+            "<html></html>".getBytes(),
+            "<html><body><script/></body></html>".getBytes(),
+            "<html><body><p>Et mye lengre dokument, som valideres først</p></html>".getBytes());
+
+        final List<HtmlValidationResult> resultater = V2_validator.valider(dokumenter);
+
+        assertEquals(3, resultater.size());
+        for (int i = 0; i < dokumenter.size(); i++) {
+            assertEquals(V2_validator.valider(dokumenter.get(i)).toString(), resultater.get(i).toString());
+        }
+    }
+
+    @Test
+    void batch_skal_starte_største_dokument_først_på_gitt_executor() {
+        final List<String> validertIRekkefølge = new ArrayList<>();
+        final List<Runnable> oppgaver = new ArrayList<>();
+        final HtmlValidator validator = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC), new DigipostValidatingHtmlSanitizer() {
+            @Override
+            public String sanitize(String html, PolicyFactory policy) throws ValidationException {
+                validertIRekkefølge.add(html);
+                return super.sanitize(html, policy);
+            }
+        }).withExecutor(command -> {
+            oppgaver.add(command);
+            command.run();
+        });
+
+        final List<HtmlValidationResult> resultater = validator.valider(Arrays.asList(
+            "<html></html>".getBytes(),
+            "<html><body><p>Lengst</p></body></html>".getBytes()));
+
+        assertEquals(2, oppgaver.size());
+        assertEquals(Arrays.asList("<html><body><p>Lengst</p></body></html>", "<html></html>"), validertIRekkefølge);
+        assertSame(HtmlValidationResult.HTML_EVERYTHING_OK, resultater.get(0));
+        assertSame(HtmlValidationResult.HTML_EVERYTHING_OK, resultater.get(1));
+    }
+
+    @Test
+    void async_skal_gi_samme_resultat_som_valider() {
+        final byte[] html = "<html><body><script/></body></html>".getBytes();
+
+        assertEquals(V2_validator.valider(html).toString(), V2_validator.validerAsync(html).join().toString());
+    }
+
+    @Test
+    void async_skal_validere_på_gitt_executor() {
+        final List<Runnable> oppgaver = new ArrayList<>();
+        final CompletableFuture<HtmlValidationResult> resultat = V2_validator.withExecutor(oppgaver::add).validerAsync("<html></html>".getBytes());
+
+        assertFalse(resultat.isDone());
+        oppgaver.forEach(Runnable::run);
+        assertSame(HtmlValidationResult.HTML_EVERYTHING_OK, resultat.join());
+    }
+
+    @Test
+    void metrics_skal_få_størrelse_og_tid_for_alle_faser() {
+        final List<Integer> størrelser = new ArrayList<>();
+        final Set<ValidationPhase> faser = EnumSet.noneOf(ValidationPhase.class);
+        final HtmlValidator validator = V2_validator.withPreScreen().withMetrics(new ValidationMetrics() {
+            @Override
+            public void phase(ValidationPhase phase, long nanos) {
+                faser.add(phase);
+            }
+
+            @Override
+            public void documentSize(int bytes) {
+                størrelser.add(bytes);
+            }
+        });
+
+        validator.valider("<html><head><style>.a { color: red; }</style></head></html>".getBytes());
+
+        assertEquals(Arrays.asList(59), størrelser);
+        validator.compileTemplate("<p>{{tekst}}</p>").valider("<p>Hallo</p>".getBytes());
+        assertEquals(EnumSet.allOf(ValidationPhase.class), faser);
+    }
+
+    @Test
+    void warm_up_skal_validere_gyldig_og_ugyldig_html_og_css() {
+        final List<HtmlValidationResult> resultater = V2_validator.valider(WarmUpCorpus.documents());
+
+        assertTrue(resultater.get(0).okForWeb, resultater.get(0).toString());
+        assertEquals(ValidationError.Code.CSS_ILLEGAL_WORDS, resultater.get(1).getErrors().get(0).getCode());
+        assertEquals(ValidationError.Code.ILLEGAL_TAG, resultater.get(2).getErrors().get(0).getCode());
+    }
+
+    @Test
+    void warm_up_skal_stoppe_etter_antall_iterasjoner_eller_tid() {
+        assertEquals(3, V2_validator.warmUp(3, Duration.ofMinutes(1)));
+        assertEquals(1, V2_validator.warmUp(1000, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> V2_validator.warmUp(0, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void warm_up_skal_ikke_bruke_cache_eller_metrics() {
+        final HtmlValidationCache cache = new HtmlValidationCache(100, 1024 * 1024);
+        final List<ValidationPhase> faser = new ArrayList<>();
+        final HtmlValidator validator = V2_validator.withCache(cache).withMetrics(new ValidationMetrics() {
+            @Override
+            public void phase(ValidationPhase phase, long nanos) {
+                faser.add(phase);
+            }
+        });
+
+        final CacheStats stilarkFør = HtmlValidator.stylesheetCacheStats();
+        final CacheStats attributterFør = HtmlValidator.attributeCacheStats();
+
+        validator.warmUp(2, Duration.ofMinutes(1));
+
+        assertEquals(0, cache.stats().size);
+        assertEquals(Collections.emptyList(), faser);
+        final CacheStats stilarkEtter = HtmlValidator.stylesheetCacheStats();
+        assertEquals(stilarkFør.hitCount, stilarkEtter.hitCount);
+        assertEquals(stilarkFør.missCount, stilarkEtter.missCount);
+        assertEquals(stilarkFør.size, stilarkEtter.size);
+        final CacheStats attributterEtter = HtmlValidator.attributeCacheStats();
+        assertEquals(attributterFør.hitCount, attributterEtter.hitCount);
+        assertEquals(attributterFør.missCount, attributterEtter.missCount);
+        assertEquals(attributterFør.size, attributterEtter.size);
+    }
+
+    @Test
+    void buffer_skal_gi_samme_resultat_som_bytes() {
+        for (String html : Arrays.asList("<html></html>", "<p>Ikke avsluttet", "<html><body><script/></body></html>", "<p>Blåbærsyltetøy \uD83D\uDE00</p>")) {
+            final byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+            final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 2);
+            direct.put((byte) 'x').put(bytes).put((byte) 'y');
+            ((Buffer) direct).limit(bytes.length + 1).position(1);
+
+            assertEquals(V2_validator.valider(bytes).toString(), V2_validator.valider(direct).toString());
+            assertEquals(1, direct.position());
+        }
+    }
+
+    @Test
+    void buffer_skal_dekodes_som_string() {
+        final StringBuilder lang = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            lang.append("æøå \uD83D\uDE00 ");
+        }
+        final byte[] ugyldig = {'<', 'p', '>', (byte) 0xc3, 'a', (byte) 0xf0, (byte) 0x9f, '<', '/', 'p', '>', (byte) 0xe2, (byte) 0x82};
+        for (byte[] bytes : Arrays.asList(lang.toString().getBytes(StandardCharsets.UTF_8), ugyldig, new byte[0])) {
+            assertEquals(new String(bytes, StandardCharsets.UTF_8), Utf8.decode(ByteBuffer.wrap(bytes)));
+        }
+    }
+
+    @Test
+    void fil_skal_gi_samme_resultat_som_bytes(@TempDir Path mappe) throws IOException {
+        final byte[] html = "<html><body><p>Hei <a href=\"https://www.digipost.no\">Digipost</a></p></body></html>".getBytes(StandardCharsets.UTF_8);
+        final Path fil = Files.write(mappe.resolve("brev.html"), html);
+
+        assertEquals(V2_validator.valider(html).toString(), V2_validator.valider(fil).toString());
+        assertSame(HtmlValidationResult.HTML_EVERYTHING_OK, V2_validator.valider(Files.write(mappe.resolve("tom.html"), new byte[0])));
+    }
+}
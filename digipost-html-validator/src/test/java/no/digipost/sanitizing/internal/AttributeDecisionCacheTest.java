@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import no.digipost.sanitizing.exception.HTMLValidationException;
+import no.digipost.sanitizing.exception.ValidationError;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AttributeDecisionCacheTest {
+
+    private final AttributeDecisionCache cache = new AttributeDecisionCache(64);
+
+    @Test
+    void caches_both_allowed_and_rejected_values() {
+        assertTrue(cache.matches(ValidatorPatterns.ALIGN, "td", "align", "left"));
+        assertFalse(cache.matches(ValidatorPatterns.ALIGN, "td", "align", "javascript:alert(1)"));
+        assertTrue(cache.matches(ValidatorPatterns.ALIGN, "td", "align", "left"));
+        assertFalse(cache.matches(ValidatorPatterns.ALIGN, "td", "align", "javascript:alert(1)"));
+
+        assertEquals(2, cache.hitCount());
+        assertEquals(2, cache.missCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void caches_by_matcher_element_attribute_and_value() {
+        cache.matches(ValidatorPatterns.ALIGN, "td", "align", "left");
+        cache.matches(ValidatorPatterns.ALIGN, "th", "align", "left");
+        cache.matches(ValidatorPatterns.ALIGN, "td", "valign", "left");
+        cache.matches(ValidatorPatterns.VALIGN, "td", "align", "left");
+        cache.matches(ValidatorPatterns.ALIGN, "td", "align", "right");
+
+        assertEquals(0, cache.hitCount());
+        assertEquals(5, cache.size());
+    }
+
+    @Test
+    void is_bounded_and_never_caches_long_values() {
+        for (int i = 0; i < 1000; i++) {
+            cache.matches(ValidatorPatterns.HTML_CLASS, "p", "class", "class-" + i);
+        }
+        assertTrue(cache.size() <= 64, "size " + cache.size());
+        assertEquals(1000 - cache.size(), cache.evictionCount());
+
+        cache.clear();
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i <= AttributeDecisionCache.MAX_VALUE_LENGTH; i++) {
+            longValue.append('a');
+        }
+        assertTrue(cache.matches(ValidatorPatterns.HTML_CLASS, "p", "class", longValue.toString()));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void a_document_adds_a_limited_number_of_values() {
+        AttributeDecisionCache bigCache = new AttributeDecisionCache(100_000);
+        try (ValidationContext context = ValidationContext.open(ValidationSettings.DEFAULTS)) {
+            for (int i = 0; i < 10_000; i++) {
+                bigCache.matches(ValidatorPatterns.HTML_CLASS, "p", "class", "class-" + i);
+            }
+        }
+        assertEquals(AttributeDecisionCache.MAX_ADMISSIONS_PER_DOCUMENT, bigCache.size());
+
+        try (ValidationContext context = ValidationContext.open(ValidationSettings.DEFAULTS)) {
+            bigCache.matches(ValidatorPatterns.HTML_CLASS, "p", "class", "another-document");
+        }
+        assertEquals(AttributeDecisionCache.MAX_ADMISSIONS_PER_DOCUMENT + 1, bigCache.size());
+    }
+
+    @Test
+    void does_not_cache_for_settings_without_shared_caches() {
+        try (ValidationContext context = ValidationContext.open(ValidationSettings.DEFAULTS.withSharedCaches(false))) {
+            assertTrue(cache.matches(ValidatorPatterns.ALIGN, "td", "align", "left"));
+            assertTrue(cache.matches(ValidatorPatterns.ALIGN, "td", "align", "left"));
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.missCount());
+    }
+
+    @Test
+    void cached_values_count_against_the_step_budget_of_the_document() {
+        String value = "digipost-abstract";
+        cache.matches(ValidatorPatterns.HTML_CLASS, "p", "class", value);
+
+        ValidationSettings settings = ValidationSettings.DEFAULTS.withMaxMatchSteps(3L * (value.length() + 1));
+        try (ValidationContext context = ValidationContext.open(settings)) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(cache.matches(ValidatorPatterns.HTML_CLASS, "p", "class", value));
+            }
+            HTMLValidationException thrown = assertThrows(HTMLValidationException.class, () -> cache.matches(ValidatorPatterns.HTML_CLASS, "p", "class", value));
+            assertEquals(ValidationError.Code.MATCH_STEPS_EXCEEDED, thrown.getErrors().get(0).getCode());
+        }
+        assertEquals(4, cache.hitCount());
+    }
+}
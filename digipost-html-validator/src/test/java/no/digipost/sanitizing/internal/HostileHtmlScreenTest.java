@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import no.digipost.sanitizing.DigipostValidatingHtmlSanitizer;
+import no.digipost.sanitizing.exception.CSSValidationException;
+import no.digipost.sanitizing.exception.HTMLValidationException;
+import no.digipost.sanitizing.exception.ValidationError;
+import org.junit.jupiter.api.Test;
+import org.owasp.html.HtmlPolicyBuilder;
+import org.owasp.html.PolicyFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Random;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class HostileHtmlScreenTest {
+
+    private static final PolicyFactory V1 = PolicyFactoryProvider.getPolicyFactory(PolicyFactoryProvider.V2_IN_EFFECT.minusSeconds(1));
+    private static final PolicyFactory V2 = PolicyFactoryProvider.getPolicyFactory(Instant.now());
+
+    @Test
+    void finds_hostile_tags() {
+        assertIllegalTag("script", "<p>Hei</p><script>alert(1)</script>");
+        assertIllegalTag("script", "<p>Hei<SCRIPT src=\"x.js\"/>");
+        assertIllegalTag("iframe", "<iframe src=\"https://example.com\"></iframe>");
+        assertIllegalTag("object", "<div><object data=x></object></div>");
+    }
+
+    @Test
+    void finds_event_handlers_and_javascript_links() {
+        assertIllegalAttributes("p", "<p onclick=\"alert(1)\">Hei</p>", "onclick");
+        assertIllegalAttributes("p", "<p title=\"x\" ONMOUSEOVER='alert(1)' onclick=x>Hei</p>", "onmouseover", "onclick");
+        assertIllegalAttributes("a", "<a href=\"JavaScript:alert(1)\">Hei</a>", "href");
+        assertIllegalAttributes("table", "<table background=javascript:x></table>", "background");
+    }
+
+    @Test
+    void finds_images_with_nothing_but_an_external_source() {
+        assertIllegalTag("img", "<img src=\"https://example.com/pixel.png\">");
+        assertIllegalTag("img", "<img src='javascript:alert(1)'/>");
+
+        assertNull(screen("<img src=\"https://example.com/pixel.png\" alt=\"x\">"));
+        assertNull(screen("<img src=\"data:image/png;base64,iVBORw0KGgo=\">"));
+    }
+
+    @Test
+    void skips_comments_attribute_values_and_raw_text() {
+        assertNull(screen("<!-- <script>alert(1)</script> -->"));
+        assertNull(screen("<p title=\"<script>\" class='onclick=x'>onclick=x</p>"));
+        assertNull(screen("<title><script></title>"));
+        assertNull(screen("<style>p { color: red; } <iframe></style>"));
+        assertNull(screen("<!DOCTYPE html><html><body><p>Hei</p></body></html>"));
+        assertNull(screen("<foo onclick=x>a</foo>"));
+
+        assertIllegalTag("script", "<!-- x --><style>p { }</style><script>");
+    }
+
+    @Test
+    void gives_up_on_what_the_sanitizer_may_read_differently() {
+        assertNull(screen("<textarea><script></textarea>"));
+        assertNull(screen("<p/onclick=x>a</p>"));
+        assertNull(screen("<p title=a\"b onclick=x>a</p>"));
+        assertNull(screen("<p title=x onclick>a</p>"));
+        assertNull(screen("<p\fonclick=x>a</p>"));
+        assertNull(screen("<p onclick=x onclick=y>a</p>"));
+        assertNull(screen("<!>x<script>"));
+        assertNull(screen("</<title>x<script>"));
+        assertNull(screen("<iframe<xmp>"));
+        assertNull(screen("<comment><script>x</script></comment>"));
+        assertNull(screen("<p>Hei<script"));
+    }
+
+    @Test
+    void does_not_screen_custom_policies() {
+        PolicyFactory custom = new HtmlPolicyBuilder().allowElements("p").toFactory();
+
+        assertNull(HostileHtmlScreen.screen("<script>alert(1)</script>", custom));
+    }
+
+    @Test
+    void screens_bytes_like_the_decoded_html() {
+        String html = "<p title=\"blåbær\">Blåbærsyltetøy</p><p ONCLICK=x>æøå</p>";
+
+        assertEquals(String.valueOf(screen(html)), String.valueOf(HostileHtmlScreen.screen(new ByteChars(html.getBytes(StandardCharsets.UTF_8)), V2)));
+    }
+
+    @Test
+    void rejects_only_what_the_sanitizer_rejects() {
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer();
+        Random random = new Random(42);
+        int screened = 0;
+        for (int i = 0; i < 5_000; i++) {
+            String html = randomHtml(random);
+            for (PolicyFactory policy : asList(V1, V2)) {
+                ValidationError error = HostileHtmlScreen.screen(html, policy);
+                assertEquals(String.valueOf(error), String.valueOf(HostileHtmlScreen.screen(new ByteChars(html.getBytes(StandardCharsets.UTF_8)), policy)), html);
+                if (error == null) {
+                    continue;
+                }
+                screened++;
+                try {
+                    sanitizer.sanitize(html, policy);
+                    fail("Screened, but accepted by the sanitizer: " + html);
+                } catch (HTMLValidationException e) {
+                    assertTrue(e.getErrors().stream().anyMatch(found -> found.getCode() == error.getCode()
+                            && Objects.equals(found.getElement(), error.getElement()) && found.getAttributes().containsAll(error.getAttributes())),
+                            () -> error + " not among " + e.getErrors() + " for " + html);
+                } catch (CSSValidationException e) {
+                    // Rejected at a style element before the screened error
+                }
+            }
+        }
+        assertTrue(screened > 500, "screened " + screened);
+    }
+
+    private static String randomHtml(Random random) {
+        StringBuilder html = new StringBuilder();
+        int tags = 1 + random.nextInt(4);
+        for (int t = 0; t < tags; t++) {
+            html.append(pick(random, "", "x", "æøå", "<p>", "</p>", "<!-- c -->", "a\"b", "'", "&lt;", "<!>", "</<", "<?x>"));
+            html.append(pick(random, "<", "<", "<", "</"));
+            html.append(pick(random, "p", "P", "a", "img", "font", "table", "td", "body", "span", "script", "iframe", "object", "foo", "style", "title", "textarea", "comment"));
+            int attributes = random.nextInt(4);
+            for (int a = 0; a < attributes; a++) {
+                html.append(pick(random, " ", " ", " ", "  ", "\t", "\n", "\r", "\f", "/", ""));
+                html.append(pick(random, "onclick", "OnLoad", "on", "href", "HREF", "src", "background", "title", "class", "alt", "xonclick", "on:x"));
+                int quoting = random.nextInt(5);
+                if (quoting > 0) {
+                    html.append(pick(random, "=", "=", " = ", "=\n"));
+                    String value = pick(random, "x", "javascript:alert(1)", "JavaScript:x", " javascript:x", "http://x/y.png", "HTTPS://x",
+                            "data:image/png;base64,iVBORw0KGgo=", "a b", "", "a'b", "a\"b", "a>b", "a/b", "æøå", "jav&#97;script:x");
+                    if (quoting == 1) {
+                        html.append(value);
+                    } else {
+                        char quote = quoting == 4 ? '\'' : '"';
+                        html.append(quote).append(value).append(quote);
+                    }
+                }
+            }
+            html.append(pick(random, ">", ">", ">", "/>", " />", "", "<"));
+            html.append(pick(random, "", "text", "</script>", "</style>", "p { color: red; }", "</title>", "</a>"));
+        }
+        return html.toString();
+    }
+
+    private static String pick(Random random, String... alternatives) {
+        return alternatives[random.nextInt(alternatives.length)];
+    }
+
+    private static ValidationError screen(String html) {
+        ValidationError v1 = HostileHtmlScreen.screen(html, V1);
+        assertEquals(String.valueOf(v1), String.valueOf(HostileHtmlScreen.screen(html, V2)));
+        return v1;
+    }
+
+    private static void assertIllegalTag(String element, String html) {
+        ValidationError error = screen(html);
+        assertEquals(ValidationError.Code.ILLEGAL_TAG, error.getCode(), html);
+        assertEquals(element, error.getElement());
+    }
+
+    private static void assertIllegalAttributes(String element, String html, String... attributes) {
+        ValidationError error = screen(html);
+        assertEquals(ValidationError.Code.ILLEGAL_ATTRIBUTES, error.getCode(), html);
+        assertEquals(element, error.getElement());
+        assertEquals(asList(attributes), error.getAttributes());
+    }
+}
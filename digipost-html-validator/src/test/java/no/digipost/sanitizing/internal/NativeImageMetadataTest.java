@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class NativeImageMetadataTest {
+
+    private static final String METADATA = "/META-INF/native-image/no.digipost/digipost-html-validator/";
+
+    @Test
+    void classes_initialized_at_build_time_exist() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = getClass().getResourceAsStream(METADATA + "native-image.properties")) {
+            assertNotNull(in);
+            properties.load(in);
+        }
+        String args = properties.getProperty("Args");
+        String classes = args.substring(args.indexOf('=') + 1);
+        for (String name : classes.split(",")) {
+            if (name.startsWith("no.digipost.")) {
+                assertClassExists(name);
+            }
+        }
+    }
+
+    @Test
+    void classes_used_by_reflection_exist() throws IOException {
+        String json;
+        try (InputStream in = getClass().getResourceAsStream(METADATA + "reflect-config.json")) {
+            assertNotNull(in);
+            json = new Scanner(in, StandardCharsets.UTF_8.name()).useDelimiter("\\A").next();
+        }
+        Matcher names = Pattern.compile("\"name\": \"([\\w.]+)\",\\s*\"methods\"").matcher(json);
+        List<String> classes = new ArrayList<>();
+        while (names.find()) {
+            classes.add(names.group(1));
+        }
+        assertFalse(classes.isEmpty());
+        for (String name : classes) {
+            assertClassExists(name);
+        }
+    }
+
+    private void assertClassExists(String name) {
+        assertDoesNotThrow(() -> {
+            try {
+                Class.forName(name, false, getClass().getClassLoader());
+            } catch (UnsupportedClassVersionError e) {
+                // The class exists, but for a newer Java, like the shim OWASP uses on Java 9 and later
+            }
+        }, name);
+    }
+}
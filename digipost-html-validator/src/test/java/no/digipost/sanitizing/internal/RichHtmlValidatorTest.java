@@ -20,7 +20,11 @@ import no.digipost.sanitizing.exception.ValidationException;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.Collections;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class RichHtmlValidatorTest {
@@ -119,6 +123,22 @@ public class RichHtmlValidatorTest {
             "\t\t\t5CYII=\" />");
     }
 
+    @Test
+    public void skal_ikke_slippe_gjennom_ugyldig_base64_img() {
+        assertInvalid("<img src=\"data:image/png;base64,iVBO*w0KGgo=\" />");
+        assertInvalid("<img src=\"data:image/png;base64,iVBOR=w0\" />");
+        assertInvalid("<img src=\"data:image/png;base64,iVBORw0KG\" />");
+        assertInvalid("<img src=\"data:image/png;base64iVBORw0KGgo=\" />");
+        assertInvalid("<img src=\"data:image/svg+xml;base64,PHN2Zz4=\" />");
+    }
+
+    @Test
+    public void skal_godta_base64_img_med_padding_og_prosent_encoding() {
+        assertValid("<img src=\"data:image/png;base64,iVBORw==\" />");
+        assertValid("<img src=\"data:image/png;base64,iVBORw0=\" />");
+        assertValid("<img src=\"data:image/png;base64,iVBO%2Bw0%3D\" />");
+    }
+
     @Test
     public void smoke_test_skal_ikke_slippe_gjennom_inline_svg() {
         assertInvalid("<div><svg onclick=alert('evil')></svg></div>");
@@ -139,6 +159,12 @@ public class RichHtmlValidatorTest {
         assertValid("<div style=\"background:url(data:image/jpeg;base64,/9j=)\">Hei</div>");
     }
 
+    @Test
+    public void skal_html_escape_tegn_i_style() {
+        String validatedHtml = validator.sanitize("<style>.a { color: red; & < > /x }</style>", ApiHtmlValidatorPolicy.V2_VALIDATE_HTML_AND_CSS_POLICY);
+        assertEquals("<style>.a { color: red; &amp; &lt; &gt; &#x2F;x }</style>", validatedHtml);
+    }
+
     @Test
     public void skal_tillate_tom_td() {
         assertValid("<table><tr><td>asdf</td><td>dsfg</td></tr><tr><td colspan='2'>&nbsp;</td></tr></table>");
@@ -212,6 +238,25 @@ public class RichHtmlValidatorTest {
         assertInvalid("<select><option><style><script>alert(1)</script></style></option></select>\n");
     }
 
+    @Test
+    public void skal_validere_lange_attributtverdier_uten_stack_overflow() {
+        String abbr = String.join("", Collections.nCopies(100_000, "a "));
+        assertValid("<table><tr><td abbr=\"" + abbr + "\">Hei</td></tr></table>");
+        assertInvalid("<table><tr><td abbr=\"" + abbr + "<\">Hei</td></tr></table>");
+    }
+
+    @Test
+    public void skal_avvise_lang_flex_basis_i_lineaer_tid() {
+        String flexBasis = String.join("", Collections.nCopies(100_000, "1")) + "x";
+        assertTimeout(Duration.ofSeconds(5), () -> assertInvalid("<style>.a { flex: 1 1 " + flexBasis + "; }</style><div class=\"a\">Hei</div>"));
+    }
+
+    @Test
+    public void skal_stoette_meta_viewport() {
+        assertValid("<html><head><meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\"></head><body>Hei</body></html>");
+        assertInvalid("<html><head><meta name=\"viewport\" content=\"width=device-width, initial-scale=1.00000\"></head><body>Hei</body></html>");
+    }
+
     private void assertValid(String html) {
         try {
             validator.sanitize(html, ApiHtmlValidatorPolicy.V2_VALIDATE_HTML_AND_CSS_POLICY);
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+class SanitizerBuffersTest {
+
+    @Test
+    void reuses_the_buffers_of_the_thread() {
+        StringBuilder first;
+        ErrorCollectingHtmlChangeListener firstCollector;
+        try (SanitizerBuffers buffers = SanitizerBuffers.acquire()) {
+            first = buffers.output(100).append("<p>Hei</p>");
+            firstCollector = buffers.errorCollector(1);
+            try (SanitizerBuffers nested = SanitizerBuffers.acquire()) {
+                assertThat(nested, not(sameInstance(buffers)));
+            }
+        }
+
+        try (SanitizerBuffers buffers = SanitizerBuffers.acquire()) {
+            StringBuilder output = buffers.output(200);
+            assertThat(output, sameInstance(first));
+            assertThat(output.length(), is(0));
+            assertThat(output.capacity(), greaterThanOrEqualTo(200));
+            assertThat(buffers.errorCollector(5), sameInstance(firstCollector));
+            assertThat(firstCollector.hasErrors(), is(false));
+        }
+    }
+
+    @Test
+    void does_not_keep_huge_output_buffers() {
+        StringBuilder huge;
+        try (SanitizerBuffers buffers = SanitizerBuffers.acquire()) {
+            huge = buffers.output(SanitizerBuffers.MAX_RETAINED_CHARS + 1);
+        }
+
+        try (SanitizerBuffers buffers = SanitizerBuffers.acquire()) {
+            assertThat(buffers.output(10), not(sameInstance(huge)));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import no.digipost.sanitizing.DigipostValidatingHtmlSanitizer;
+import org.junit.jupiter.api.Test;
+import org.owasp.html.PolicyFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlotTextTest {
+
+    @Test
+    void allowed_chars_are_not_changed_by_sanitizing() {
+        StringBuilder text = new StringBuilder();
+        for (char c = 0; c < Character.MAX_VALUE; c++) {
+            if (SlotText.isAllowed(c)) {
+                text.append(c).append('a');
+            }
+        }
+        DigipostValidatingHtmlSanitizer sanitizer = new DigipostValidatingHtmlSanitizer();
+
+        for (PolicyFactory policy : asList(PolicyFactoryProvider.getPolicyFactory(PolicyFactoryProvider.V2_IN_EFFECT.minusSeconds(1)), PolicyFactoryProvider.getPolicyFactory(Instant.now()))) {
+            String html = "<p>" + text + "</p><pre>\n" + text + "</pre><table><tbody><tr><td>" + text + "</td></tr></tbody></table>";
+            assertEquals(html, sanitizer.sanitize(html, policy));
+        }
+    }
+
+    @Test
+    void allows_only_valid_utf8_of_allowed_chars_with_some_non_whitespace() {
+        assertTrue(isAllowed("Blåbærsyltetøy, 1 234,50 kr – ok!"));
+        assertFalse(isAllowed(""));
+        assertFalse(isAllowed(" \n\t"));
+        assertFalse(isAllowed("a<b"));
+        assertFalse(isAllowed("a&amp;b"));
+        assertFalse(isAllowed("{{a}}"));
+        assertFalse(isAllowed("smil 😀"));
+
+        byte[] malformed = "blåbær".getBytes(StandardCharsets.UTF_8);
+        assertFalse(SlotText.isAllowed(malformed, 0, 3));
+    }
+
+    @Test
+    void finds_texts_which_are_not_in_plain_text() {
+        String html = "<p title=\"eh\">aa<b>bb</b></p><!-- cc --><title>dd</title><style>ee</style><p>ff</p><comment>gg</comment>";
+
+        assertEquals(singletonList("eh"), SlotText.notInText(html, singletonList("eh")));
+        assertEquals(asList("cc", "dd", "ee", "gg"), SlotText.notInText(html, asList("aa", "bb", "cc", "dd", "ee", "ff", "gg")));
+    }
+
+    private static boolean isAllowed(String text) {
+        byte[] bytes = ("x" + text + "x").getBytes(StandardCharsets.UTF_8);
+        return SlotText.isAllowed(bytes, 1, bytes.length - 1);
+    }
+}
@@ -16,15 +16,24 @@
 package no.digipost.sanitizing.internal;
 
 import no.digipost.sanitizing.exception.CSSValidationException;
+import no.digipost.sanitizing.exception.ValidationError;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static co.unruly.matchers.Java8Matchers.where;
 import static no.digipost.sanitizing.internal.StyleElementPreprocessor.StyleElementReceiver.validateAndSanitizeCss;
+import static no.digipost.sanitizing.internal.StyleElementPreprocessor.StyleElementReceiver.writeHtmlEscaped;
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class StyleElementPreprocessorTest {
@@ -339,6 +348,81 @@ public class StyleElementPreprocessorTest {
 		}
 	}
 
+	@Test
+	public void blacklisted_words_are_found_ignoring_case() {
+		String styleContent = ".myClass {\n" +
+			"font-family: JavaScript;\n" +
+			"}";
+
+		try {
+			validateAndSanitizeCss(styleContent);
+			fail();
+		} catch (CSSValidationException exp) {
+			assertThat(exp.getValidationErrors(), where(List::size, is(1)));
+			assertThat(exp.getValidationErrors().get(0), is("Content of selector '.myClass' contains one or more illegal words."));
+		}
+	}
+
+	@Test
+	public void html_chars_are_escaped_once() {
+		String styleContent = ".a { color: red; &lt; > /x }";
+
+		assertThat(validateAndSanitizeCss(styleContent), is(".a { color: red; &amp;lt; &gt; &#x2F;x }"));
+	}
+
+	@Test
+	public void css_without_html_chars_is_written_without_copying() {
+		String styleContent = ".a { color: red; }";
+		List<String> written = new ArrayList<>();
+
+		writeHtmlEscaped(styleContent, written::add);
+
+		assertThat(written, where(List::size, is(1)));
+		assertSame(styleContent, written.get(0));
+		assertSame(styleContent, validateAndSanitizeCss(styleContent));
+	}
+
+	@Test
+	public void errors_have_code_property_value_and_offset() {
+		String styleContent = "\n.a {\n  color: red;\n  cursor: pointer;\n  display: grid;\n}";
+
+		CSSValidationException thrown = assertThrows(CSSValidationException.class, () -> validateAndSanitizeCss(styleContent));
+
+		assertThat(thrown.getErrors(), where(List::size, is(2)));
+		ValidationError notAllowedProperty = thrown.getErrors().get(0);
+		assertThat(notAllowedProperty.getCode(), is(ValidationError.Code.CSS_PROPERTY_NOT_ALLOWED));
+		assertThat(notAllowedProperty.getCssSelector(), is(".a"));
+		assertThat(notAllowedProperty.getCssProperty(), is("cursor"));
+		assertThat(notAllowedProperty.getOffset(), is(styleContent.indexOf("cursor")));
+		ValidationError notAllowedValue = thrown.getErrors().get(1);
+		assertThat(notAllowedValue.getCode(), is(ValidationError.Code.CSS_VALUE_NOT_ALLOWED));
+		assertThat(notAllowedValue.getCssProperty(), is("display"));
+		assertThat(notAllowedValue.getCssValue(), is("grid"));
+		assertThat(notAllowedValue.getOffset(), is(styleContent.indexOf("display")));
+		assertThat(thrown.getValidationErrors(), contains("Property 'cursor' is not allowed.", "Value 'grid' is not allowed for property 'display'."));
+	}
+
+	@Test
+	public void large_stylesheet_is_validated_in_linear_time() {
+		StringBuilder styleContent = new StringBuilder();
+		for (int i = 0; i < 20_000; i++) {
+			styleContent.append(".myClass").append(i).append(" td {\n").append("text-align: center;\n").append("}\n");
+		}
+
+		String result = assertTimeout(Duration.ofSeconds(5), () -> validateAndSanitizeCss(styleContent.toString()));
+		assertThat(result, is(styleContent.toString()));
+	}
+
+	@Test
+	public void long_whitespace_in_selector_without_content_fails_in_linear_time() {
+		String styleContent = ".myClass" + String.join("", Collections.nCopies(100_000, " ")) + "td";
+
+		CSSValidationException exp = assertThrows(CSSValidationException.class,
+			() -> assertTimeout(Duration.ofSeconds(5), () -> validateAndSanitizeCss(styleContent)));
+		assertThat(exp.getValidationErrors(), where(List::size, is(1)));
+		assertThat(exp.getValidationErrors().get(0), is("CSS in style-element is invalid."));
+	}
+
 	@Test
 	public void epikrise_css_is_valid() {
 		String result = validateAndSanitizeCss(epikriseCss);
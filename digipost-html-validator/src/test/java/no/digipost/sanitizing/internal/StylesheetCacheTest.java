@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import no.digipost.sanitizing.exception.CSSValidationException;
+import no.digipost.sanitizing.exception.HTMLValidationException;
+import no.digipost.sanitizing.exception.ValidationError;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StylesheetCacheTest {
+
+    private final StylesheetCache cache = new StylesheetCache(10, 10_000);
+
+    @Test
+    void validates_the_same_stylesheet_once() {
+        String css = ".a { gap: 10px; content: \"1/2\"; }";
+
+        assertEquals(".a { gap: 10px; content: \"1&#x2F;2\"; }", validate(css, ValidationSettings.DEFAULTS));
+        assertEquals(".a { gap: 10px; content: \"1&#x2F;2\"; }", validate(css, ValidationSettings.DEFAULTS));
+        assertEquals(".a { gap: 10px; content: \"1&#x2F;2\"; }", validate(new String(css.toCharArray()), ValidationSettings.DEFAULTS));
+
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.size());
+        assertEquals(2L * css.length() + 5, cache.weight());
+    }
+
+    @Test
+    void keeps_stylesheets_with_nothing_to_escape_as_they_are() {
+        String css = ".a { color: red; }";
+        validate(css, ValidationSettings.DEFAULTS);
+
+        assertSame(css, validate(new String(css.toCharArray()), ValidationSettings.DEFAULTS));
+        assertEquals(css.length(), cache.weight());
+    }
+
+    @Test
+    void caches_the_errors_of_invalid_stylesheets() {
+        String css = ".a { color: red; position: fixed; behavior: url(x); }";
+
+        CSSValidationException first = assertThrows(CSSValidationException.class, () -> validate(css, ValidationSettings.DEFAULTS));
+        CSSValidationException second = assertThrows(CSSValidationException.class, () -> validate(css, ValidationSettings.DEFAULTS));
+
+        assertNotSame(first, second);
+        assertEquals(first.getErrors(), second.getErrors());
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    void caches_by_the_blacklisted_words_of_the_settings() {
+        String css = ".a { color: red; }";
+        ValidationSettings blacklistingRed = ValidationSettings.DEFAULTS.withCssBlacklistedWords(singletonList("red"));
+
+        assertEquals(css, validate(css, ValidationSettings.DEFAULTS));
+        CSSValidationException thrown = assertThrows(CSSValidationException.class, () -> validate(css, blacklistingRed));
+
+        assertEquals(ValidationError.Code.CSS_ILLEGAL_WORDS, thrown.getErrors().get(0).getCode());
+        assertEquals(0, cache.hitCount());
+    }
+
+    @Test
+    void cached_stylesheets_count_against_the_step_budget_of_the_document() {
+        String css = ".a { gap: 10px; flex: 1 1 auto; }";
+        long steps;
+        try (ValidationContext context = ValidationContext.open(ValidationSettings.DEFAULTS)) {
+            cache.validateAndWriteEscaped(css, text -> { });
+            steps = ValidationContext.matchSteps();
+        }
+
+        ValidationSettings budget = ValidationSettings.DEFAULTS.withMaxMatchSteps(2 * steps);
+        try (ValidationContext context = ValidationContext.open(budget)) {
+            cache.validateAndWriteEscaped(css, text -> { });
+            cache.validateAndWriteEscaped(css, text -> { });
+            assertEquals(2 * steps, ValidationContext.matchSteps());
+            HTMLValidationException thrown = assertThrows(HTMLValidationException.class, () -> cache.validateAndWriteEscaped(css, text -> { }));
+            assertEquals(ValidationError.Code.MATCH_STEPS_EXCEEDED, thrown.getErrors().get(0).getCode());
+        }
+        assertEquals(3, cache.hitCount());
+    }
+
+    @Test
+    void does_not_cache_outside_of_a_document_or_stylesheets_too_long() {
+        List<String> written = new ArrayList<>();
+        cache.validateAndWriteEscaped(".a { color: red; }", written::add);
+        assertEquals(singletonList(".a { color: red; }"), written);
+
+        StringBuilder longCss = new StringBuilder();
+        while (longCss.length() <= StylesheetCache.MAX_STYLESHEET_LENGTH) {
+            longCss.append(".a { color: red; }\n");
+        }
+        validate(longCss.toString(), ValidationSettings.DEFAULTS);
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.missCount());
+    }
+
+    @Test
+    void does_not_cache_for_settings_without_shared_caches() {
+        String css = ".a { gap: 10px; content: \"1/2\"; }";
+
+        assertEquals(".a { gap: 10px; content: \"1&#x2F;2\"; }", validate(css, ValidationSettings.DEFAULTS.withSharedCaches(false)));
+        assertEquals(".a { gap: 10px; content: \"1&#x2F;2\"; }", validate(css, ValidationSettings.DEFAULTS.withSharedCaches(false)));
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.missCount());
+    }
+
+    private String validate(String css, ValidationSettings settings) {
+        List<String> written = new ArrayList<>();
+        try (ValidationContext context = ValidationContext.open(settings)) {
+            cache.validateAndWriteEscaped(css, written::add);
+        }
+        return written.size() == 1 ? written.get(0) : String.join("", written);
+    }
+}
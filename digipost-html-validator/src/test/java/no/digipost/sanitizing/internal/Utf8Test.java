@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class Utf8Test {
+
+    private static final byte[] INTERESTING_BYTES = {
+        'a', '<', ' ', 0, 0x7F, (byte) 0x80, (byte) 0xBF, (byte) 0xC0, (byte) 0xC2, (byte) 0xC3, (byte) 0xDF,
+        (byte) 0xE0, (byte) 0xE2, (byte) 0xED, (byte) 0xEF, (byte) 0xF0, (byte) 0xF4, (byte) 0xF5, (byte) 0xFF };
+
+    @Test
+    void decodes_direct_buffers_in_chunks_like_new_string() {
+        Random random = new Random(42);
+        for (int i = 0; i < 50_000; i++) {
+            byte[] bytes = i % 2 == 0 ? randomBytes(random) : randomText(random);
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes);
+            ((Buffer) direct).rewind();
+            int chunkBytes = 5 + random.nextInt(12);
+
+            assertEquals(new String(bytes, StandardCharsets.UTF_8), Utf8.decode(direct, chunkBytes), () -> "chunks of " + chunkBytes);
+            assertEquals(0, direct.position());
+        }
+    }
+
+    @Test
+    void decodes_heap_buffers_from_their_position() {
+        byte[] bytes = "xxBlåbærsyltetøy".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer slice = ByteBuffer.wrap(bytes, 2, bytes.length - 2).slice();
+
+        assertEquals("Blåbærsyltetøy", Utf8.decode(slice));
+    }
+
+    private static byte[] randomBytes(Random random) {
+        byte[] bytes = new byte[random.nextInt(40)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = random.nextBoolean() ? INTERESTING_BYTES[random.nextInt(INTERESTING_BYTES.length)] : (byte) random.nextInt();
+        }
+        return bytes;
+    }
+
+    private static byte[] randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(30);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(4)) {
+                case 0: text.append((char) ('a' + random.nextInt(26))); break;
+                case 1: text.append("æøåÆØÅ".charAt(random.nextInt(6))); break;
+                case 2: text.append('€'); break;
+                default: text.appendCodePoint(0x1F600 + random.nextInt(50));
+            }
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
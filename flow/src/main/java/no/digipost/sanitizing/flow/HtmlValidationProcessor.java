@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.flow;
+
+import no.digipost.sanitizing.HtmlValidationResult;
+import no.digipost.sanitizing.HtmlValidationSession;
+import no.digipost.sanitizing.HtmlValidator;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Validates one document, e.g. the body of a request, as it is published in {@link ByteBuffer}s, and publishes the
+ * {@link HtmlValidationResult} to one subscriber. The bytes are fed to a {@link HtmlValidationSession} as they arrive.
+ * <p>
+ * One buffer is requested at a time, and the next one only when the previous one is validated, so only one buffer of
+ * the document is held at a time. Nothing is requested until the subscriber of the result has requested it. All
+ * validation is done on the given executor, never on the threads of the publisher or the subscriber, so that
+ * event loop threads are not blocked. If the document is found to be rejected before all of it is published, the
+ * subscription to the publisher is cancelled, and the rejection is published right away.
+ * <p>
+ * The publisher must not change a buffer after passing it to {@link #onNext(ByteBuffer)}, as it is read later, on
+ * the executor. The position of the buffer is moved to its limit when it is read.
+ */
+public final class HtmlValidationProcessor implements Flow.Processor<ByteBuffer, HtmlValidationResult> {
+
+    private final HtmlValidator validator;
+    private final Executor executor;
+    private final Queue<Runnable> signals = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingSignals = new AtomicInteger();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    // Only used by the signals, which are run one at a time
+    private Flow.Subscription upstream;
+    private Flow.Subscriber<? super HtmlValidationResult> downstream;
+    private HtmlValidationSession session;
+    private boolean requested;
+    private boolean demanded;
+    private boolean done;
+    private HtmlValidationResult result;
+    private Throwable error;
+
+    public HtmlValidationProcessor(HtmlValidator validator) {
+        this(validator, ForkJoinPool.commonPool());
+    }
+
+    public HtmlValidationProcessor(HtmlValidator validator, Executor executor) {
+        this.validator = Objects.requireNonNull(validator, "validator");
+        this.executor = Objects.requireNonNull(executor, "executor");
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super HtmlValidationResult> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("The result of a " + getClass().getSimpleName() + " can only be subscribed to once"));
+            return;
+        }
+        signal(() -> {
+            downstream = subscriber;
+            subscriber.onSubscribe(new ResultSubscription());
+            publish();
+        });
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription, "subscription");
+        signal(() -> {
+            if (upstream != null || done) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+            session = validator.startSession();
+            requestFirst();
+        });
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        Objects.requireNonNull(item, "item");
+        signal(() -> {
+            if (done || result != null || error != null) {
+                return;
+            }
+            if (session.feed(item)) {
+                upstream.request(1);
+            } else {
+                upstream.cancel();
+                result = session.finish();
+                publish();
+            }
+        });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        Objects.requireNonNull(throwable, "throwable");
+        signal(() -> {
+            if (result == null && error == null) {
+                error = throwable;
+                publish();
+            }
+        });
+    }
+
+    @Override
+    public void onComplete() {
+        signal(() -> {
+            if (!done && result == null && error == null) {
+                result = session.finish();
+                publish();
+            }
+        });
+    }
+
+    private final class ResultSubscription implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            signal(() -> {
+                if (n <= 0 && error == null && result == null) {
+                    error = new IllegalArgumentException("Requested " + n + " results, must be positive");
+                    if (upstream != null) {
+                        upstream.cancel();
+                    }
+                }
+                demanded = true;
+                requestFirst();
+                publish();
+            });
+        }
+
+        @Override
+        public void cancel() {
+            signal(() -> {
+                done = true;
+                if (upstream != null) {
+                    upstream.cancel();
+                }
+            });
+        }
+    }
+
+    private void requestFirst() {
+        if (!requested && demanded && upstream != null && !done && error == null) {
+            requested = true;
+            upstream.request(1);
+        }
+    }
+
+    private void publish() {
+        if (done || downstream == null) {
+            return;
+        }
+        if (error != null) {
+            done = true;
+            downstream.onError(error);
+        } else if (result != null && demanded) {
+            done = true;
+            downstream.onNext(result);
+            downstream.onComplete();
+        }
+    }
+
+    /**
+     * Runs the signal on the executor, after the signals before it. The signals are run one at a time.
+     */
+    private void signal(Runnable signal) {
+        signals.add(signal);
+        if (pendingSignals.getAndIncrement() == 0) {
+            executor.execute(this::runSignals);
+        }
+    }
+
+    private void runSignals() {
+        do {
+            try {
+                signals.poll().run();
+            } catch (RuntimeException e) {
+                if (!done && error == null && result == null) {
+                    error = e;
+                    if (upstream != null) {
+                        upstream.cancel();
+                    }
+                    publish();
+                }
+            }
+        } while (pendingSignals.decrementAndGet() != 0);
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.flow;
+
+import no.digipost.sanitizing.HtmlValidationResult;
+import no.digipost.sanitizing.HtmlValidator;
+import no.digipost.sanitizing.internal.PolicyFactoryProvider;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HtmlValidationProcessorTest {
+
+    private final HtmlValidator validator = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC));
+
+    @Test
+    void publishes_same_result_as_validating_the_whole_document() throws Exception {
+        byte[] html = document("<p>Blåbær</p><a href=\"https://www.digipost.no\">lenke</a>", 100).getBytes(StandardCharsets.UTF_8);
+        BufferPublisher publisher = new BufferPublisher(html, 7);
+        HtmlValidationProcessor processor = new HtmlValidationProcessor(validator);
+        ResultSubscriber subscriber = new ResultSubscriber();
+
+        publisher.subscribe(processor);
+        processor.subscribe(subscriber);
+
+        assertEquals(validator.valider(html).toString(), subscriber.result.get(10, TimeUnit.SECONDS).toString());
+        assertEquals(1, publisher.maxOutstanding.get());
+        assertFalse(publisher.cancelled.get());
+    }
+
+    @Test
+    void cancels_the_publisher_when_the_document_is_rejected_early() throws Exception {
+        byte[] html = document("<p onclick=\"x\">Hei</p>", 2000).getBytes(StandardCharsets.UTF_8);
+        BufferPublisher publisher = new BufferPublisher(html, 1024);
+        HtmlValidationProcessor processor = new HtmlValidationProcessor(validator);
+        ResultSubscriber subscriber = new ResultSubscriber();
+
+        processor.subscribe(subscriber);
+        publisher.subscribe(processor);
+
+        HtmlValidationResult result = subscriber.result.get(10, TimeUnit.SECONDS);
+        assertFalse(result.okForWeb);
+        assertTrue(publisher.cancelled.get());
+        assertTrue(publisher.published < publisher.buffers.size() / 2, "published " + publisher.published + " of " + publisher.buffers.size());
+    }
+
+    @Test
+    void requests_nothing_before_the_result_is_requested() throws Exception {
+        BufferPublisher publisher = new BufferPublisher("<p>Hei</p>".getBytes(StandardCharsets.UTF_8), 2);
+        HtmlValidationProcessor processor = new HtmlValidationProcessor(validator, Runnable::run);
+        ResultSubscriber subscriber = new ResultSubscriber(false);
+
+        publisher.subscribe(processor);
+        processor.subscribe(subscriber);
+
+        assertEquals(0, publisher.published);
+        subscriber.subscription.request(1);
+        assertEquals(HtmlValidationResult.HTML_EVERYTHING_OK, subscriber.result.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void passes_on_errors_and_allows_only_one_subscriber() throws Exception {
+        HtmlValidationProcessor processor = new HtmlValidationProcessor(validator, Runnable::run);
+        ResultSubscriber first = new ResultSubscriber();
+        ResultSubscriber second = new ResultSubscriber();
+
+        processor.subscribe(first);
+        processor.subscribe(second);
+        processor.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        processor.onError(new IllegalStateException("Connection reset"));
+
+        assertEquals("Connection reset", first.error.get().getMessage());
+        assertTrue(second.error.get() instanceof IllegalStateException);
+    }
+
+    private static String document(String start, int paragraphs) {
+        StringBuilder html = new StringBuilder("<html><body>").append(start);
+        for (int i = 0; i < paragraphs; i++) {
+            html.append("<p class=\"avsnitt\">Avsnitt nummer ").append(i).append(" med litt tekst.</p>\n");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static final class BufferPublisher implements Flow.Publisher<ByteBuffer> {
+        final List<ByteBuffer> buffers = new ArrayList<>();
+        final AtomicLong maxOutstanding = new AtomicLong();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        volatile int published;
+
+        BufferPublisher(byte[] content, int size) {
+            for (int i = 0; i < content.length; i += size) {
+                buffers.add(ByteBuffer.wrap(content, i, Math.min(size, content.length - i)));
+            }
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new BufferSubscription(subscriber));
+        }
+
+        final class BufferSubscription implements Flow.Subscription {
+            private final Flow.Subscriber<? super ByteBuffer> subscriber;
+            private long outstanding;
+            private boolean completed;
+
+            BufferSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+                this.subscriber = subscriber;
+            }
+
+            @Override
+            public synchronized void request(long n) {
+                outstanding += n;
+                maxOutstanding.accumulateAndGet(outstanding, Math::max);
+                while (outstanding > 0 && !cancelled.get() && published < buffers.size()) {
+                    outstanding--;
+                    subscriber.onNext(buffers.get(published++));
+                }
+                if (published == buffers.size() && !cancelled.get() && !completed) {
+                    completed = true;
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                cancelled.set(true);
+            }
+        }
+    }
+
+    private static final class ResultSubscriber implements Flow.Subscriber<HtmlValidationResult> {
+        final CompletableFuture<HtmlValidationResult> result = new CompletableFuture<>();
+        final CompletableFuture<Throwable> error = new CompletableFuture<>();
+        private final boolean requestOnSubscribe;
+        volatile Flow.Subscription subscription;
+
+        ResultSubscriber() {
+            this(true);
+        }
+
+        ResultSubscriber(boolean requestOnSubscribe) {
+            this.requestOnSubscribe = requestOnSubscribe;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (requestOnSubscribe) {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(HtmlValidationResult item) {
+            result.complete(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.complete(throwable);
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.metrics.dropwizard;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import no.digipost.sanitizing.metrics.ValidationPhase;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Reports {@link ValidationMetrics} to a Dropwizard {@link MetricRegistry}, with names starting with the given prefix:
+ * <ul>
+ * <li>{@code <prefix>.phase.<phase>}, timers</li>
+ * <li>{@code <prefix>.document-size}, a histogram in bytes</li>
+ * <li>{@code <prefix>.documents.<policy>}, meters</li>
+ * <li>{@code <prefix>.style-elements} and {@code <prefix>.images}, histograms per document</li>
+ * <li>{@code <prefix>.violations.<tag>.<attribute>}, meters</li>
+ * </ul>
+ * The tag and attribute names come from the documents, so only the first {@code maxNames} different names are used
+ * in metric names, and the rest are counted as {@code other}. An attribute of {@code none} means the tag itself was not allowed.
+ */
+public final class DropwizardValidationMetrics implements ValidationMetrics {
+
+    public static final String DEFAULT_PREFIX = "no.digipost.sanitizing";
+
+    static final String OTHER = "other";
+
+    private final MetricRegistry registry;
+    private final String prefix;
+    private final int maxNames;
+    private final Map<ValidationPhase, Timer> phases = new EnumMap<>(ValidationPhase.class);
+    private final Histogram documentSize;
+    private final Histogram styleElements;
+    private final Histogram images;
+    private final Set<String> tagNames = ConcurrentHashMap.newKeySet();
+    private final Set<String> attributeNames = ConcurrentHashMap.newKeySet();
+
+    public DropwizardValidationMetrics(MetricRegistry registry) {
+        this(registry, DEFAULT_PREFIX, 100);
+    }
+
+    /**
+     * @param maxNames the number of different tag names, and of attribute names, to use in metric names
+     */
+    public DropwizardValidationMetrics(MetricRegistry registry, String prefix, int maxNames) {
+        if (maxNames < 0) {
+            throw new IllegalArgumentException("maxNames can not be negative, was " + maxNames);
+        }
+        this.registry = registry;
+        this.prefix = prefix;
+        this.maxNames = maxNames;
+        for (ValidationPhase phase : ValidationPhase.values()) {
+            phases.put(phase, registry.timer(name(prefix, "phase", phase.name().toLowerCase(Locale.ROOT))));
+        }
+        this.documentSize = registry.histogram(name(prefix, "document-size"));
+        this.styleElements = registry.histogram(name(prefix, "style-elements"));
+        this.images = registry.histogram(name(prefix, "images"));
+    }
+
+    @Override
+    public void phase(ValidationPhase phase, long nanos) {
+        phases.get(phase).update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void documentSize(int bytes) {
+        documentSize.update(bytes);
+    }
+
+    @Override
+    public void sanitized(String policyVersion, int styleElements, int images) {
+        registry.meter(name(prefix, "documents", policyVersion)).mark();
+        this.styleElements.update(styleElements);
+        this.images.update(images);
+    }
+
+    @Override
+    public void violation(String tagName, String attributeName) {
+        registry.meter(name(prefix, "violations",
+            bounded(tagNames, tagName),
+            attributeName == null ? "none" : bounded(attributeNames, attributeName))).mark();
+    }
+
+    private String bounded(Set<String> names, String name) {
+        if (names.contains(name) || (names.size() < maxNames && names.add(name))) {
+            return name;
+        }
+        return OTHER;
+    }
+}
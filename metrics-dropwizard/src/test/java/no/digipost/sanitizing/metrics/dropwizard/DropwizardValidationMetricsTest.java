@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.metrics.dropwizard;
+
+import com.codahale.metrics.MetricRegistry;
+import no.digipost.sanitizing.HtmlValidator;
+import no.digipost.sanitizing.internal.PolicyFactoryProvider;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DropwizardValidationMetricsTest {
+
+    @Test
+    void reports_phases_documents_and_violations_with_bounded_names() {
+        MetricRegistry registry = new MetricRegistry();
+        HtmlValidator validator = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC))
+            .withMetrics(new DropwizardValidationMetrics(registry, "html", 1));
+        String html = "<html><head><style>.a { color: red; }</style></head>"
+            + "<body><p onclick=\"x\">Hei</p><p onmouseover=\"x\">Hei</p><blink>Hei</blink></body></html>";
+
+        validator.valider(html.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(1, registry.timer("html.phase.decode").getCount());
+        assertEquals(1, registry.timer("html.phase.css_validation").getCount());
+        assertEquals(html.length(), registry.histogram("html.document-size").getSnapshot().getMax());
+        assertEquals(1, registry.meter("html.documents.V2").getCount());
+        assertEquals(1, registry.histogram("html.style-elements").getSnapshot().getMax());
+        assertEquals(1, registry.meter("html.violations.p.onclick").getCount());
+        assertEquals(1, registry.meter("html.violations.p.other").getCount());
+        assertEquals(1, registry.meter("html.violations.other.none").getCount());
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.metrics.micrometer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import no.digipost.sanitizing.metrics.ValidationMetrics;
+import no.digipost.sanitizing.metrics.ValidationPhase;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports {@link ValidationMetrics} to a Micrometer {@link MeterRegistry}:
+ * <ul>
+ * <li>{@code html.validation.phase}, a timer tagged with {@code phase}</li>
+ * <li>{@code html.validation.document.size}, a summary in bytes</li>
+ * <li>{@code html.validation.documents}, a counter tagged with {@code policy}</li>
+ * <li>{@code html.validation.style.elements} and {@code html.validation.images}, summaries per document</li>
+ * <li>{@code html.validation.violations}, a counter tagged with {@code tag} and {@code attribute}</li>
+ * </ul>
+ * The tag and attribute names come from the documents, so only the first {@code maxNames} different names are used
+ * as tags, and the rest are counted as {@code other}. An attribute of {@code none} means the tag itself was not allowed.
+ */
+public final class MicrometerValidationMetrics implements ValidationMetrics {
+
+    static final String OTHER = "other";
+
+    private final MeterRegistry registry;
+    private final int maxNames;
+    private final Map<ValidationPhase, Timer> phases = new EnumMap<>(ValidationPhase.class);
+    private final DistributionSummary documentSize;
+    private final DistributionSummary styleElements;
+    private final DistributionSummary images;
+    private final Set<String> tagNames = ConcurrentHashMap.newKeySet();
+    private final Set<String> attributeNames = ConcurrentHashMap.newKeySet();
+
+    public MicrometerValidationMetrics(MeterRegistry registry) {
+        this(registry, 100);
+    }
+
+    /**
+     * @param maxNames the number of different tag names, and of attribute names, to use as tags
+     */
+    public MicrometerValidationMetrics(MeterRegistry registry, int maxNames) {
+        if (maxNames < 0) {
+            throw new IllegalArgumentException("maxNames can not be negative, was " + maxNames);
+        }
+        this.registry = registry;
+        this.maxNames = maxNames;
+        for (ValidationPhase phase : ValidationPhase.values()) {
+            phases.put(phase, Timer.builder("html.validation.phase")
+                .tag("phase", phase.name().toLowerCase(Locale.ROOT))
+                .register(registry));
+        }
+        this.documentSize = DistributionSummary.builder("html.validation.document.size").baseUnit("bytes").register(registry);
+        this.styleElements = DistributionSummary.builder("html.validation.style.elements").register(registry);
+        this.images = DistributionSummary.builder("html.validation.images").register(registry);
+    }
+
+    @Override
+    public void phase(ValidationPhase phase, long nanos) {
+        phases.get(phase).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void documentSize(int bytes) {
+        documentSize.record(bytes);
+    }
+
+    @Override
+    public void sanitized(String policyVersion, int styleElements, int images) {
+        registry.counter("html.validation.documents", "policy", policyVersion).increment();
+        this.styleElements.record(styleElements);
+        this.images.record(images);
+    }
+
+    @Override
+    public void violation(String tagName, String attributeName) {
+        Counter.builder("html.validation.violations")
+            .tag("tag", bounded(tagNames, tagName))
+            .tag("attribute", attributeName == null ? "none" : bounded(attributeNames, attributeName))
+            .register(registry)
+            .increment();
+    }
+
+    private String bounded(Set<String> names, String name) {
+        if (names.contains(name) || (names.size() < maxNames && names.add(name))) {
+            return name;
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.sanitizing.metrics.micrometer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.digipost.sanitizing.HtmlValidator;
+import no.digipost.sanitizing.internal.PolicyFactoryProvider;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MicrometerValidationMetricsTest {
+
+    @Test
+    void reports_phases_documents_and_violations_with_bounded_names() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HtmlValidator validator = new HtmlValidator(Clock.fixed(PolicyFactoryProvider.V2_IN_EFFECT, ZoneOffset.UTC))
+            .withMetrics(new MicrometerValidationMetrics(registry, 1));
+        String html = "<html><head><style>.a { color: red; }</style></head>"
+            + "<body><p onclick=\"x\">Hei</p><p onmouseover=\"x\">Hei</p><blink>Hei</blink></body></html>";
+
+        validator.valider(html.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(1, registry.get("html.validation.phase").tag("phase", "decode").timer().count());
+        assertEquals(1, registry.get("html.validation.phase").tag("phase", "css_validation").timer().count());
+        assertEquals(html.length(), registry.get("html.validation.document.size").summary().totalAmount());
+        assertEquals(1, registry.get("html.validation.documents").tag("policy", "V2").counter().count());
+        assertEquals(1, registry.get("html.validation.style.elements").summary().totalAmount());
+        assertEquals(1, registry.get("html.validation.violations").tags("tag", "p", "attribute", "onclick").counter().count());
+        assertEquals(1, registry.get("html.validation.violations").tags("tag", "p", "attribute", "other").counter().count());
+        assertEquals(1, registry.get("html.validation.violations").tags("tag", "other", "attribute", "none").counter().count());
+    }
+}